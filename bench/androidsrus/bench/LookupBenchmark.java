@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus.bench;
+
+import androidsrus.ByteSink;
+import androidsrus.PartType;
+import androidsrus.Robot;
+import androidsrus.RobotPrinter;
+import androidsrus.RunConfiguration;
+import androidsrus.Scavenger;
+import androidsrus.SerialNumberAllocator;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for the paths used when answering queries: serial number 
+ * allocation, registry lookups and the formatting of robot details.
+ *
+ * @author Wellington Regis
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class LookupBenchmark {
+    @Param({"500", "100000", "1000000", "5000000"})
+    private int donors;
+
+    private androidsrus.Setup yard;
+    private int[] newSerialNumbers;
+    private int next;
+    private SerialNumberAllocator allocator;
+    private RobotPrinter printer;
+
+    /**
+     * Generates a yard and collects the serial numbers of its new robots.
+     * Robots are printed to a sink that throws its bytes away, so that 
+     * printing robots measures formatting only.
+     */
+    @Setup(Level.Trial)
+    public void createYard() {
+        int builds = (int) ((long) donors * RunConfiguration.DEFAULT_BUILDS / RunConfiguration.DEFAULT_DONORS);
+        yard = new androidsrus.Setup(donors, builds, 42);
+        yard.setUp(donors);
+        Scavenger.createNewRobots(yard, builds);
+
+        newSerialNumbers = new int[builds];
+        for (int i = 0; i < builds; i++) {
+            newSerialNumbers[i] = yard.getRobotViaSerial().getBySlot(donors + i).getSerialNumber();
+        }
+        // Shuffles serial numbers so that lookups don't follow slot order
+        Random random = new Random(42);
+        for (int i = newSerialNumbers.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = newSerialNumbers[i];
+            newSerialNumbers[i] = newSerialNumbers[j];
+            newSerialNumbers[j] = swap;
+        }
+
+        allocator = new SerialNumberAllocator(new SplittableRandom(42));
+        printer = new RobotPrinter(yard.getRobotViaSerial(), yard.getProvenance(), new ByteSink(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) {
+                int written = source.remaining();
+                source.position(source.limit());
+                return written;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        }));
+    }
+
+    /**
+     * Measures the allocation of a unique serial number. A new allocator is
+     * started whenever the serial numbers run out.
+     *
+     * @return the serial number allocated
+     */
+    @Benchmark
+    public int allocateSerialNumber() {
+        if (allocator.remaining() == 0) {
+            allocator = new SerialNumberAllocator(new SplittableRandom(next));
+        }
+        return allocator.next();
+    }
+
+    /**
+     * Measures looking a robot up through its serial number
+     *
+     * @return the robot found
+     */
+    @Benchmark
+    public Robot lookUpRobot() {
+        return yard.getRobotViaSerial().get(nextSerialNumber());
+    }
+
+    /**
+     * Measures looking up the origin of every part of a new robot
+     *
+     * @return the sum of the origins, so that the work is not optimised away
+     */
+    @Benchmark
+    public int lookUpOrigins() {
+        int serialNumber = nextSerialNumber();
+        int sum = 0;
+        for (PartType part : PartType.values()) {
+            sum += yard.getProvenance().getOrigin(serialNumber, part);
+        }
+        return sum;
+    }
+
+    /**
+     * Measures formatting the details of a new robot with the origin of its
+     * parts, writing them out as the menu does after every robot
+     *
+     * @throws IOException never, since the sink throws bytes away
+     */
+    @Benchmark
+    public void printRobotDetails() throws IOException {
+        printer.printDetailsWithOrigins(yard.getRobotViaSerial().slotOf(nextSerialNumber()));
+        printer.flush();
+    }
+
+    /*
+     * Goes round the shuffled serial numbers of new robots
+     */
+    private int nextSerialNumber() {
+        if (next == newSerialNumbers.length) {
+            next = 0;
+        }
+        return newSerialNumbers[next++];
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus.bench;
+
+import androidsrus.PartPool;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for picking parts from a <code>PartPool</code>, which is what
+ * <code>Scavenger</code> does for every part of every new robot. Every taken
+ * slot is put back, so the pool keeps its size throughout a run.
+ *
+ * @author Wellington Regis
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PartPoolBenchmark {
+    @Param({"500", "100000", "1000000", "10000000"})
+    private int donors;
+
+    private PartPool pool;
+    private SplittableRandom random;
+    private int[] excluded;
+
+    /**
+     * Fills the pool with one entry per donor
+     */
+    @Setup(Level.Trial)
+    public void fillPool() {
+        pool = new PartPool(donors);
+        for (int slot = 0; slot < donors; slot++) {
+            pool.add(slot);
+        }
+        random = new SplittableRandom(42);
+        excluded = new int[]{0, 1};
+    }
+
+    /**
+     * Measures an unconstrained pick, as done for brain and mobility parts
+     *
+     * @return the slot picked
+     */
+    @Benchmark
+    public int takeRandom() {
+        int slot = pool.takeRandomExcluding(random, excluded, 0);
+        pool.add(slot);
+        return slot;
+    }
+
+    /**
+     * Measures a pick excluding two saturated donors, as done for the last
+     * parts of a robot
+     *
+     * @return the slot picked
+     */
+    @Benchmark
+    public int takeRandomExcludingTwo() {
+        int slot = pool.takeRandomExcluding(random, excluded, excluded.length);
+        pool.add(slot);
+        return slot;
+    }
+}
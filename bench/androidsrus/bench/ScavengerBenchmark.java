@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus.bench;
+
+import androidsrus.RunConfiguration;
+import androidsrus.Scavenger;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for the building of new robots in <code>Scavenger.createNewRobots
+ * </code>. Every invocation starts from a freshly generated yard of old 
+ * androids. Fleet sizes go up to the largest run the 7 digit serial numbers 
+ * allow.
+ *
+ * @author Wellington Regis
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class ScavengerBenchmark {
+    private static final long SEED = 42;
+
+    @Param({"500", "100000", "1000000", "5000000"})
+    private int donors;
+
+    @Param({"1"})
+    private int threads;
+
+    private ForkJoinPool pool;
+    private androidsrus.Setup yard;
+
+    /**
+     * Creates the thread pool used by all invocations
+     */
+    @Setup(Level.Trial)
+    public void createPool() {
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    /**
+     * Creates a yard holding old androids only
+     */
+    @Setup(Level.Invocation)
+    public void createYard() {
+        yard = new androidsrus.Setup(donors, builds(), SEED);
+        yard.setUp(donors, pool);
+    }
+
+    /**
+     * Shuts the thread pool down
+     */
+    @TearDown(Level.Trial)
+    public void shutdownPool() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Measures the building of new robots from old androids
+     *
+     * @return the yard, so that the work is not optimised away
+     */
+    @Benchmark
+    public androidsrus.Setup createNewRobots() {
+        Scavenger.createNewRobots(yard, builds(), pool);
+        return yard;
+    }
+
+    /*
+     * Builds as many new robots as a default run does in relation to donors
+     */
+    private int builds() {
+        return (int) ((long) donors * RunConfiguration.DEFAULT_BUILDS / RunConfiguration.DEFAULT_DONORS);
+    }
+}
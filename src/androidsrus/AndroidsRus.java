@@ -16,6 +16,11 @@
  */
 package androidsrus;
 
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
 /**
  * Driver class for the AndroidsRus program
  * 
@@ -26,14 +31,201 @@ public class AndroidsRus {
     /**
      * Main method
      * 
-     * @param args the command line arguments
+     * @param args the command line arguments, e.g. 
+     * <code>--donors=500 --builds=400</code> or <code>--config=run.properties
+     * </code>
      */
     public static void main(String[] args) {
         
-        Setup s = new Setup();
-        s.setUp();
-        Scavenger.createNewRobots(s);
-        Menu.run(s);
+        RunConfiguration config;
+        try {
+            config = RunConfiguration.fromArguments(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: AndroidsRus [--config=file] [--donors=n] [--builds=n] [--threads=n] [--seed=n] [--storage=heap|offheap] [--load=file] [--save=file] [--import=file] [--export=file] [--batch=file|-] [--serve=port] [--serve-threads=n] [--journal=file] [--fsync=n] [--compact=n]");
+            System.exit(1);
+            return;
+        }
+        
+        // Without a seed every run is different
+        long seed = config.hasSeed() ? config.getSeed() : Utilities.getInstance().getR().nextLong();
+        
+        Setup s = null;
+        Journal journal = null;
+        RobotServer server = null;
+        boolean generating = false;
+        String step = "open journal"; // used in error messages
+        try {
+            if (config.getJournal() != null) {
+                journal = Journal.open(config.getJournal(), seed, config.getFsync(), 
+                        config.getSave(), config.getCompact());
+            }
+            
+            // A saved yard is used as it is, so sizes and seed are ignored. 
+            // Without one, a journal holding robots is replayed onto an empty
+            // yard.
+            step = "load snapshot";
+            if (config.getLoad() != null) {
+                s = Snapshot.read(config.getLoad(), config.getStorage());
+            } else if (journal != null && journal.hasRecords()) {
+                s = new Setup(config.getDonors(), config.getBuilds(), journal.getSeed(), config.getStorage());
+            } else {
+                Utilities.getInstance().setSeed(seed);
+                s = new Setup(config.getDonors(), config.getBuilds(), seed, config.getStorage());
+                generating = true;
+            }
+            
+            // Queries are answered while robots are still being replayed or
+            // built, each one seeing the robots added so far
+            if (config.getServe() >= 0) {
+                server = serve(s, config);
+            }
+            
+            step = "replay journal";
+            if (!generating && journal != null) {
+                int replayed = journal.replay(s);
+                System.err.println("Replayed " + replayed + " robots from " + config.getJournal());
+            }
+            
+            step = "log robots";
+            if (generating) {
+                generate(config, s, journal);
+            }
+            
+            // With a journal, saving the yard also empties the journal
+            step = "save snapshot";
+            if (config.getSave() != null) {
+                if (journal != null) {
+                    journal.compact(s);
+                } else {
+                    Snapshot.write(s, config.getSave());
+                }
+            }
+            
+            step = "export robots";
+            if (config.getExport() != null) {
+                long start = System.nanoTime();
+                long exported = new BuildExporter(s).export(config.getExport());
+                System.err.printf("Exported %d new robots to %s in %.2f s%n", 
+                        exported, config.getExport(), (System.nanoTime() - start) / 1e9);
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            System.err.println("Could not " + step + ": " + ex.getMessage());
+            System.exit(1);
+            return;
+        }
+        
+        if (server != null) {
+            System.err.println("Yard is ready with " + s.getRobotViaSerial().size() + " robots");
+        } else if (config.getBatch() != null) {
+            runBatch(s, config.getBatch());
+        } else {
+            Menu.run(s);
+        }
+        
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                System.err.println("Could not close journal: " + ex.getMessage());
+            }
+        }
+    }
+
+    /*
+     * Starts answering queries over HTTP. The threads of the server keep the
+     * program running until it is stopped.
+     */
+    private static RobotServer serve(Setup s, RunConfiguration config) {
+        RobotServer server;
+        try {
+            server = new RobotServer(s, new InetSocketAddress(config.getServe()), config.getServeThreads());
+        } catch (IOException ex) {
+            System.err.println("Could not serve on port " + config.getServe() + ": " + ex.getMessage());
+            System.exit(1);
+            return null;
+        }
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        System.err.println("Serving on http://localhost:" + server.getPort() + "/");
+        return server;
+    }
+
+    /*
+     * Runs the queries of a batch file, or of the standard input if the file
+     * is named "-", writing the results to the standard output
+     */
+    private static void runBatch(Setup s, Path batch) {
+        BatchRunner runner = new BatchRunner(s, ByteSink.of(new FileOutputStream(FileDescriptor.out)));
+        long start = System.nanoTime();
+        try (InputStream in = batch.toString().equals("-") ? System.in : Files.newInputStream(batch)) {
+            runner.run(in);
+        } catch (IOException ex) {
+            System.err.println("Could not run batch: " + ex.getMessage());
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Ran %d queries (%d errors) in %.2f s (%.0f queries/s)%n", 
+                runner.getQueries(), runner.getErrors(), seconds, runner.getQueries() / seconds);
+    }
+
+    /*
+     * Creates the old androids and builds the new robots from them in an 
+     * empty setup, logging them to the journal if there is one. Exits the 
+     * program if not all new robots could be built.
+     */
+    private static void generate(RunConfiguration config, Setup s, Journal journal) {
+        // Generation runs on the main thread unless more threads are asked for
+        ForkJoinPool pool = config.getThreads() > 1 ? new ForkJoinPool(config.getThreads()) : null;
+        
+        s.setJournal(journal);
+        try {
+            if (config.getImport() != null) {
+                importDonors(s, config);
+            } else {
+                s.setUp(config.getDonors(), pool);
+            }
+            Scavenger.createNewRobots(s, config.getBuilds(), pool);
+        } catch (IllegalStateException ex) {
+            // Happens when the last few old androids cannot complete a robot
+            System.err.println("Could not build all new robots: " + ex.getMessage());
+            System.exit(1);
+            return;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /*
+     * Imports old androids from the file given in the configuration and 
+     * reports how it went, exiting the program if the file could not be read
+     * or holds too few androids
+     */
+    private static void importDonors(Setup s, RunConfiguration config) {
+        DonorImporter importer = new DonorImporter(s);
+        try {
+            importer.importFile(config.getImport());
+        } catch (IOException ex) {
+            System.err.println("Could not import old androids: " + ex.getMessage());
+            System.exit(1);
+        }
+        
+        System.err.printf("Imported %d of %d rows from %s in %.2f s (%.0f rows/s)%n", 
+                importer.getImported(), importer.getRows(), config.getImport(),
+                importer.getElapsedNanos() / 1e9, importer.getRowsPerSecond());
+        for (String error : importer.getErrors()) {
+            System.err.println("    " + error);
+        }
+        if (importer.getRejected() > importer.getErrors().size()) {
+            System.err.println("    ... and " + (importer.getRejected() - importer.getErrors().size()) + " more rows rejected");
+        }
+        if (config.getBuilds() > importer.getImported()) {
+            System.err.println("Cannot build " + config.getBuilds() + " new robots from only " 
+                    + importer.getImported() + " old androids");
+            System.exit(1);
+        }
     }
     
 }
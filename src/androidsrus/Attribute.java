@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+/**
+ * The attributes of a robot that can be searched on
+ *
+ * @author Wellington Regis
+ */
+public enum Attribute {
+    BRAIN("brain", PartType.BRAIN),
+    MOBILITY("mobility", PartType.MOBILITY),
+    VISION("vision", PartType.VISION),
+    ARMS("arms", PartType.ARMS),
+    MEDIA_CENTER("mediaCenter", PartType.MEDIA_CENTER),
+    POWER_PLANT("powerPlant", PartType.POWER_PLANT),
+    MODEL("model", null) {
+        @Override
+        public int codeOf(long codes) {
+            return Robot.modelOf(codes).ordinal();
+        }
+
+        @Override
+        public String decode(int code) {
+            return Model.values()[code].getName();
+        }
+
+        @Override
+        public int encode(String value) {
+            for (Model model : Model.values()) {
+                if (model.getName().equals(value)) {
+                    return model.ordinal();
+                }
+            }
+            return -1;
+        }
+    },
+    LINE("line", null) {
+        @Override
+        public int codeOf(long codes) {
+            return Robot.modelOf(codes).getLine().ordinal();
+        }
+
+        @Override
+        public String decode(int code) {
+            return Line.values()[code].getName();
+        }
+
+        @Override
+        public int encode(String value) {
+            for (Line line : Line.values()) {
+                if (line.getName().equals(value)) {
+                    return line.ordinal();
+                }
+            }
+            return -1;
+        }
+    };
+
+    /**
+     * Amount of attributes
+     */
+    public static final int COUNT = values().length;
+
+    private final String name;
+    private final PartType part;
+
+    /*
+     * Constructor for enum Attribute
+     */
+    private Attribute(String name, PartType part) {
+        this.name = name;
+        this.part = part;
+    }
+
+    /**
+     * Gets the name of the attribute as used in messages (e.g. "powerPlant")
+     *
+     * @return the name of the attribute
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the part type this attribute describes
+     *
+     * @return the part type or null if the attribute is not a part
+     */
+    public PartType getPartType() {
+        return part;
+    }
+
+    /**
+     * Gets the value of this attribute for a robot
+     *
+     * @param robot holds the robot
+     * @return a String with the value of the attribute
+     */
+    public String valueOf(Robot robot) {
+        return decode(codeOf(robot.getCodes()));
+    }
+
+    /**
+     * Gets the code of this attribute out of the packed parts and model of a
+     * robot. Codes are below <code>PartDictionary.MAX_CODES</code>.
+     *
+     * @param codes holds parts and model as packed by 
+     * {@link Robot#getCodes()}
+     * @return the code of the attribute
+     */
+    public int codeOf(long codes) {
+        return Robot.partCodeOf(codes, part);
+    }
+
+    /**
+     * Gets the value of this attribute given its code
+     *
+     * @param code holds a code returned by {@link #codeOf(long)}
+     * @return a String with the value of the attribute
+     */
+    public String decode(int code) {
+        return PartDictionary.decode(part, code);
+    }
+
+    /**
+     * Gets the code of a value of this attribute
+     *
+     * @param value holds the value
+     * @return the code of the value or -1 if no robot has ever had it
+     */
+    public int encode(String value) {
+        return PartDictionary.codeOf(part, value);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+
+/**
+ * An instance of class <code>AttributeIndex</code> answers searches over the
+ * attributes of robots. For every value of every attribute it keeps a bitmap
+ * with a bit set for each registry slot holding a robot with that value, so 
+ * a search with several conditions is a handful of bitmap ANDs rather than a
+ * pass over all robots. For every part type it also keeps a bitmap of the 
+ * old androids whose part of that type has been used.
+ * <p>
+ * The index catches up with the registry at the start of every search, 
+ * indexing only the robots added since the previous search.
+ *
+ * @author Wellington Regis
+ */
+public class AttributeIndex {
+    private final RobotRegistry robots;
+    private final ProvenanceStore provenance;
+    private final BitSet[][] bitmaps; // indexed by attribute ordinal, then code
+    private final BitSet[] used; // indexed by part type ordinal
+    private int indexed;
+
+    /**
+     * Constructor for the <code>AttributeIndex</code> class
+     *
+     * @param robots holds the registry of the robots to be searched
+     * @param provenance holds the store with the origin of robot parts, used
+     * to find out which parts have been used
+     */
+    public AttributeIndex(RobotRegistry robots, ProvenanceStore provenance) {
+        this.robots = robots;
+        this.provenance = provenance;
+        this.bitmaps = new BitSet[Attribute.COUNT][PartDictionary.MAX_CODES];
+        this.used = new BitSet[PartType.COUNT];
+        for (int i = 0; i < PartType.COUNT; i++) {
+            used[i] = new BitSet();
+        }
+        this.indexed = 0;
+    }
+
+    /**
+     * Indexes the robots added to the registry since the last call
+     */
+    public void refresh() {
+        int size = robots.size();
+        for (int slot = indexed; slot < size; slot++) {
+            long codes = robots.getCodesAt(slot);
+            for (Attribute attribute : Attribute.values()) {
+                BitSet[] byCode = bitmaps[attribute.ordinal()];
+                int code = attribute.codeOf(codes);
+                if (byCode[code] == null) {
+                    byCode[code] = new BitSet();
+                }
+                byCode[code].set(slot);
+            }
+
+            // A new robot marks the parts it took from old androids as used
+            if (Robot.modelOf(codes).getLine() == Line.NEW) {
+                for (PartType part : PartType.values()) {
+                    int donor = robots.slotOf(provenance.getOriginAt(slot, part));
+                    if (donor >= 0) {
+                        used[part.ordinal()].set(donor);
+                    }
+                }
+            }
+        }
+        indexed = size;
+    }
+
+    /**
+     * Gets the values found so far for an attribute
+     *
+     * @param attribute holds the attribute
+     * @return the values of the attribute, in alphabetical order
+     */
+    public List<String> valuesOf(Attribute attribute) {
+        refresh();
+        List<String> values = new ArrayList<>();
+        BitSet[] byCode = bitmaps[attribute.ordinal()];
+        for (int code = 0; code < byCode.length; code++) {
+            if (byCode[code] != null) {
+                values.add(attribute.decode(code));
+            }
+        }
+        Collections.sort(values);
+        return values;
+    }
+
+    /**
+     * Finds the robots meeting all the conditions of a query
+     *
+     * @param query holds the query
+     * @return a bitmap with a bit set for the registry slot of each robot
+     * found
+     */
+    public BitSet search(RobotQuery query) {
+        refresh();
+        BitSet result = new BitSet(indexed);
+        result.set(0, indexed);
+
+        for (int i = 0; i < query.size() && !result.isEmpty(); i++) {
+            BitSet bitmap = bitmapOf(query.getAttribute(i), query.getValue(i));
+            if (bitmap == null) {
+                result.clear();
+            } else {
+                result.and(bitmap);
+            }
+        }
+
+        if (!query.getUnused().isEmpty()) {
+            BitSet oldLine = bitmaps[Attribute.LINE.ordinal()][Line.OLD.ordinal()];
+            if (oldLine == null) {
+                result.clear();
+            } else {
+                result.and(oldLine);
+            }
+            for (PartType part : query.getUnused()) {
+                result.andNot(used[part.ordinal()]);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Gets the bitmap of robots having a particular value, or null if no 
+     * robot has it
+     */
+    private BitSet bitmapOf(Attribute attribute, String value) {
+        int code = attribute.encode(value);
+        return code < 0 ? null : bitmaps[attribute.ordinal()][code];
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.io.*;
+import java.nio.charset.*;
+
+/**
+ * An instance of class <code>BatchRunner</code> answers queries read from a
+ * stream, one per line, without going through the menu. Queries are run as 
+ * soon as they are read and their results collected in a 
+ * <code>ByteSink</code>, which is only written out when it fills up or the 
+ * stream ends, so reading, answering and writing overlap instead of waiting 
+ * on each other query by query.
+ * <p>
+ * The following queries are understood, with words separated by spaces or 
+ * tabs. Blank lines and lines starting with <code>#</code> are skipped.
+ * <ul>
+ * <li><code>robot &lt;serial number&gt;</code> prints a robot, along with the
+ * origin of its parts if it belongs to the new line</li>
+ * <li><code>donor &lt;serial number&gt;</code> prints an old android and the 
+ * new robot each of its parts went to</li>
+ * <li><code>model &lt;model&gt;</code> prints every robot of a model</li>
+ * <li><code>count [model]</code> prints how many robots there are of a model,
+ * or of each model of the new line</li>
+ * </ul>
+ * Models are given by name (e.g. <code>Andy the Android</code>) or by the 
+ * first word of their name (e.g. <code>andy</code> or <code>mk2</code>), in 
+ * any case. Queries that cannot be understood get a line starting with 
+ * <code>Error:</code> and do not stop the batch.
+ *
+ * @author Wellington Regis
+ */
+public class BatchRunner {
+    private static final Model[] NEW_MODELS = Model.ofLine(Line.NEW);
+    private static final PartType[] PARTS = PartType.values();
+    private static final String[] COMMANDS = {"robot", "donor", "model", "count"};
+    private static final int ROBOT = 0; // positions in COMMANDS
+    private static final int DONOR = 1;
+    private static final int MODEL = 2;
+    private static final int COUNT = 3;
+
+    private final RobotRegistry robots;
+    private final ProvenanceStore provenance;
+    private final ByteSink out;
+    private final RobotPrinter printer;
+    private long queries;
+    private long errors;
+
+    /**
+     * Constructor for the <code>BatchRunner</code> class
+     *
+     * @param s holds the setup queries are run against
+     * @param out holds the sink results are written to
+     */
+    public BatchRunner(Setup s, ByteSink out) {
+        this.robots = s.getRobotViaSerial();
+        this.provenance = s.getProvenance();
+        this.out = out;
+        this.printer = new RobotPrinter(robots, provenance, out);
+    }
+
+    /**
+     * Runs every query of a stream until it ends, then flushes the results
+     *
+     * @param in holds the stream queries are read from, as text
+     * @return the amount of queries run
+     * @throws IOException if the queries could not be read or the results 
+     * could not be written
+     */
+    public long run(InputStream in) throws IOException {
+        return run(new InputReader(in));
+    }
+
+    /**
+     * Runs every query of a reader until its stream ends, then flushes the
+     * results
+     *
+     * @param in holds the reader queries are read from
+     * @return the amount of queries run
+     * @throws IOException if the queries could not be read or the results 
+     * could not be written
+     */
+    public long run(InputReader in) throws IOException {
+        long before = queries;
+        try {
+            while (runNext(in)) {
+                // Results pile up in the sink until it fills up
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        out.flush();
+        return queries - before;
+    }
+
+    /**
+     * Runs the queries held by a piece of text. Results are not flushed.
+     *
+     * @param query holds one or more queries
+     * @throws IOException if the results could not be written
+     */
+    public void run(String query) throws IOException {
+        InputReader in = new InputReader(new ByteArrayInputStream(query.getBytes(StandardCharsets.UTF_8)));
+        while (runNext(in)) {
+            // Runs every line of the text
+        }
+    }
+
+    /**
+     * Gets the amount of queries run so far, not counting blank lines and 
+     * comments
+     *
+     * @return the amount of queries run
+     */
+    public long getQueries() {
+        return queries;
+    }
+
+    /**
+     * Gets the amount of queries that could not be answered so far
+     *
+     * @return the amount of queries answered with an error
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /*
+     * Reads and runs the next query, returning false once the stream has 
+     * ended. Commands are matched as bytes and serial numbers parsed as they
+     * are read, so the usual queries create no strings.
+     */
+    private boolean runNext(InputReader in) throws IOException {
+        if (!in.hasNext()) {
+            return false;
+        }
+        if (in.nextStartsWith('#')) {
+            in.skipLine();
+            return true;
+        }
+        queries++;
+
+        switch (in.nextOf(COMMANDS)) {
+            case ROBOT:
+                int slot = slotOf(in);
+                if (slot >= 0) {
+                    printer.print(slot);
+                }
+                in.skipLine();
+                break;
+            case DONOR:
+                printDonor(slotOf(in));
+                in.skipLine();
+                break;
+            case MODEL:
+                Model model = modelOf(in.restOfLine());
+                if (model != null) {
+                    ModelIndex models = robots.getModelIndex();
+                    for (int i = 0; i < models.count(model); i++) {
+                        printer.print(models.slotAt(model, i));
+                    }
+                }
+                break;
+            case COUNT:
+                printCount(in.restOfLine());
+                break;
+            default:
+                error("Unknown query, expected one of robot, donor, model or count").newLine();
+                in.skipLine();
+        }
+        return true;
+    }
+
+    /*
+     * Prints an old android and, for each of its parts, the new robot the 
+     * part went to
+     */
+    private void printDonor(int slot) throws IOException {
+        if (slot < 0) {
+            return;
+        }
+        if (Robot.modelOf(robots.getCodesAt(slot)).getLine() != Line.OLD) {
+            error("Not an old android: ").write(robots.getSerialNumberAt(slot)).newLine();
+            return;
+        }
+        printer.printDetails(slot);
+        for (PartType part : PARTS) {
+            int recipient = provenance.getRecipientSlotAt(slot, part);
+            out.write("The ").write(part.getName());
+            if (recipient < 0) {
+                out.write(" has not been used yet").newLine();
+            } else {
+                out.write(" was donated to:").newLine();
+                printer.printDetailsWithOrigins(recipient);
+            }
+        }
+    }
+
+    /*
+     * Prints the amount of robots of a model, or of each model of the new 
+     * line if no model is given
+     */
+    private void printCount(String argument) throws IOException {
+        ModelIndex models = robots.getModelIndex();
+        if (argument.isEmpty()) {
+            for (Model model : NEW_MODELS) {
+                out.write(models.count(model)).write(" robots of model ").write(model.getName()).newLine();
+            }
+            return;
+        }
+        Model model = modelOf(argument);
+        if (model != null) {
+            out.write(models.count(model)).write(" robots of model ").write(model.getName()).newLine();
+        }
+    }
+
+    /*
+     * Reads the serial number given in a query and gets the slot of its 
+     * robot, or reports an error and returns -1
+     */
+    private int slotOf(InputReader in) throws IOException {
+        if (!in.hasNextOnLine()) {
+            error("Missing serial number").newLine();
+            return -1;
+        }
+        int serialNumber;
+        try {
+            serialNumber = in.nextInt();
+        } catch (NumberFormatException ex) {
+            error("Not a serial number").newLine();
+            return -1;
+        }
+        int slot = robots.slotOf(serialNumber);
+        if (slot < 0) {
+            error("No such robot found: ").write(serialNumber).newLine();
+        }
+        return slot;
+    }
+
+    /*
+     * Gets the model given in a query, by name or by the first word of its
+     * name, or reports an error and returns null
+     */
+    private Model modelOf(String argument) throws IOException {
+        try {
+            return Model.fromName(argument);
+        } catch (IllegalArgumentException ex) {
+            error("No such model: ").write(argument).newLine();
+            return null;
+        }
+    }
+
+    /*
+     * Starts an error line in place of the result of a query, leaving the 
+     * caller to finish it
+     */
+    private ByteSink error(String message) throws IOException {
+        errors++;
+        return out.write("Error: ").write(message);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * An instance of class <code>BuildExporter</code> writes every robot from the 
+ * new line to a file, along with each of its parts and the old android the 
+ * part came from. Files are either CSV, with a header and one row per robot,
+ * or JSON Lines, with one JSON object per robot.
+ * <p>
+ * Output goes through a <code>ByteSink</code>. Models and part values are 
+ * turned into bytes, quoted and escaped once per export, and robots are read
+ * from the registry and provenance columns by slot, so writing a row does 
+ * not allocate.
+ *
+ * @author Wellington Regis
+ */
+public class BuildExporter {
+    private static final PartType[] PARTS = PartType.values();
+
+    /**
+     * The formats robots can be exported to
+     */
+    public enum Format {
+        CSV, JSONL;
+
+        /**
+         * Picks the format matching the extension of a file: JSON Lines for
+         * <code>.jsonl</code> and <code>.json</code>, CSV for anything else
+         *
+         * @param file holds the path of the file
+         * @return the format matching the file
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            return name.endsWith(".jsonl") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    private final Setup s;
+
+    /**
+     * Constructor for the <code>BuildExporter</code> class
+     *
+     * @param s holds the setup whose new robots are exported
+     */
+    public BuildExporter(Setup s) {
+        this.s = s;
+    }
+
+    /**
+     * Exports the new robots to a file in the format matching its extension,
+     * replacing the file if it exists
+     *
+     * @param file holds the path of the file
+     * @return the amount of robots exported
+     * @throws IOException if the file could not be written
+     */
+    public long export(Path file) throws IOException {
+        try (ByteSink sink = new ByteSink(FileChannel.open(file, StandardOpenOption.CREATE, 
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 20)) {
+            return export(sink, Format.of(file));
+        }
+    }
+
+    /**
+     * Exports the new robots to a sink, which is flushed but not closed
+     *
+     * @param sink holds the sink robots are written to
+     * @param format holds the format robots are written in
+     * @return the amount of robots exported
+     * @throws IOException if the robots could not be written
+     */
+    public long export(ByteSink sink, Format format) throws IOException {
+        RobotRegistry robots = s.getRobotViaSerial();
+        ProvenanceStore provenance = s.getProvenance();
+        boolean csv = format == Format.CSV;
+
+        // Everything but serial numbers is prepared as bytes up front
+        byte[][] models = new byte[Model.COUNT][];
+        for (Model model : Model.values()) {
+            models[model.ordinal()] = csv ? csv(model.getName()) : json(model.getName());
+        }
+        byte[][][] values = new byte[PartType.COUNT][][];
+        byte[][] prefixes = new byte[PartType.COUNT][];
+        for (PartType part : PARTS) {
+            values[part.ordinal()] = new byte[PartDictionary.size(part)][];
+            for (int code = 0; code < values[part.ordinal()].length; code++) {
+                String value = PartDictionary.decode(part, code);
+                values[part.ordinal()][code] = csv ? csv(value) : json(value);
+            }
+            prefixes[part.ordinal()] = bytes(csv ? "," : ",\"" + part.getName() + "\":{\"type\":");
+        }
+        byte[] originPrefix = bytes(csv ? "," : ",\"origin\":");
+        byte[] partSuffix = bytes(csv ? "" : "}");
+        byte[] rowPrefix = bytes(csv ? "" : "{\"serialNumber\":");
+        byte[] modelPrefix = bytes(csv ? "," : ",\"model\":");
+        byte[] rowSuffix = bytes(csv ? "" : "}");
+
+        if (csv) {
+            sink.write("serialNumber,model");
+            for (PartType part : PARTS) {
+                sink.write((byte) ',').write(part.getName()).write((byte) ',').write(part.getName()).write("Origin");
+            }
+            sink.newLine();
+        }
+
+        long exported = 0;
+        for (int slot = 0; slot < robots.size(); slot++) {
+            long codes = robots.getCodesAt(slot);
+            Model model = Robot.modelOf(codes);
+            if (model.getLine() != Line.NEW) {
+                continue;
+            }
+            sink.write(rowPrefix).write(robots.getSerialNumberAt(slot));
+            sink.write(modelPrefix).write(models[model.ordinal()]);
+            for (PartType part : PARTS) {
+                sink.write(prefixes[part.ordinal()]).write(values[part.ordinal()][Robot.partCodeOf(codes, part)]);
+                sink.write(originPrefix).write(provenance.getOriginAt(slot, part)).write(partSuffix);
+            }
+            sink.write(rowSuffix).newLine();
+            exported++;
+        }
+        sink.flush();
+        return exported;
+    }
+
+    /*
+     * Gets the bytes of text holding only ASCII characters
+     */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Gets the bytes of a CSV field, quoting it if it holds a comma, a quote 
+     * or a line break
+     */
+    private static byte[] csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return bytes(value);
+        }
+        return bytes('"' + value.replace("\"", "\"\"") + '"');
+    }
+
+    /*
+     * Gets the bytes of a JSON string, escaped by ByteSink so that robots are
+     * written the same way whether they are exported or served
+     */
+    private static byte[] json(String value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length() + 2);
+        ByteSink sink = ByteSink.of(out);
+        try {
+            sink.writeJson(value).flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex); // never thrown by an in-memory stream
+        }
+        return out.toByteArray();
+    }
+}
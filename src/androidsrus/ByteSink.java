@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * An instance of class <code>ByteSink</code> collects bytes in a buffer and
+ * writes them to a channel whenever the buffer fills up, so that output made
+ * of many small pieces costs a few large writes. Numbers are written as 
+ * digits straight into the buffer and text can be prepared as bytes once and
+ * written many times, so nothing needs to be allocated per piece of output.
+ * <p>
+ * A sink is meant to be used by one thread at a time and reused for as long
+ * as its channel is open.
+ *
+ * @author Wellington Regis
+ */
+public class ByteSink implements Flushable, Closeable {
+    /**
+     * Size of the buffer when none is given
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final byte[] MIN_INT = String.valueOf(Integer.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private final Flushable stream; // flushed along with the sink, if any
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+    private int position;
+
+    /**
+     * Constructor for the <code>ByteSink</code> class
+     *
+     * @param channel holds the channel bytes are written to
+     */
+    public ByteSink(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor for the <code>ByteSink</code> class
+     *
+     * @param channel holds the channel bytes are written to
+     * @param bufferSize holds the amount of bytes collected before they are
+     * written, at least 16
+     */
+    public ByteSink(WritableByteChannel channel, int bufferSize) {
+        this(channel, bufferSize, null);
+    }
+
+    /*
+     * Constructor for class ByteSink
+     */
+    private ByteSink(WritableByteChannel channel, int bufferSize, Flushable stream) {
+        this.channel = channel;
+        this.stream = stream;
+        this.bytes = new byte[Math.max(bufferSize, 16)];
+        this.buffer = ByteBuffer.wrap(bytes);
+        this.position = 0;
+    }
+
+    /**
+     * Creates a sink writing to an output stream, such as <code>System.out
+     * </code>
+     *
+     * @param out holds the stream bytes are written to
+     * @return a sink writing to the stream
+     */
+    public static ByteSink of(OutputStream out) {
+        return new ByteSink(Channels.newChannel(out), DEFAULT_BUFFER_SIZE, out);
+    }
+
+    /**
+     * Writes a single byte
+     *
+     * @param b holds the byte
+     * @return this sink
+     * @throws IOException if the buffer had to be written and could not be
+     */
+    public ByteSink write(byte b) throws IOException {
+        if (position == bytes.length) {
+            drain();
+        }
+        bytes[position++] = b;
+        return this;
+    }
+
+    /**
+     * Writes all bytes of an array
+     *
+     * @param b holds the bytes
+     * @return this sink
+     * @throws IOException if the buffer had to be written and could not be
+     */
+    public ByteSink write(byte[] b) throws IOException {
+        // Most arrays are short and fit in what is left of the buffer
+        if (b.length <= bytes.length - position) {
+            System.arraycopy(b, 0, bytes, position, b.length);
+            position += b.length;
+            return this;
+        }
+        int offset = 0;
+        while (offset < b.length) {
+            if (position == bytes.length) {
+                drain();
+            }
+            int length = Math.min(b.length - offset, bytes.length - position);
+            System.arraycopy(b, offset, bytes, position, length);
+            position += length;
+            offset += length;
+        }
+        return this;
+    }
+
+    /**
+     * Writes text. Characters up to U+007F take one byte each and are 
+     * written without any encoding step. Other text is encoded as UTF-8.
+     *
+     * @param text holds the text
+     * @return this sink
+     * @throws IOException if the buffer had to be written and could not be
+     */
+    public ByteSink write(CharSequence text) throws IOException {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (position == bytes.length) {
+                drain();
+            }
+            // Copies as many characters as fit without checking for room
+            // after each one
+            int end = Math.min(length, i + bytes.length - position);
+            int p = position;
+            for (; i < end; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    position = p;
+                    return write(text.subSequence(i, length).toString().getBytes(StandardCharsets.UTF_8));
+                }
+                bytes[p++] = (byte) c;
+            }
+            position = p;
+        }
+        return this;
+    }
+
+    /**
+     * Writes text as a JSON string, in quotes and with quotes, backslashes
+     * and control characters escaped
+     *
+     * @param text holds the text
+     * @return this sink
+     * @throws IOException if the buffer had to be written and could not be
+     */
+    public ByteSink writeJson(CharSequence text) throws IOException {
+        write((byte) '"');
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                write((byte) '\\').write((byte) c);
+            } else if (c < 0x20) {
+                write((byte) '\\').write((byte) 'u').write((byte) '0').write((byte) '0');
+                write((byte) HEX[c >> 4]).write((byte) HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                write((byte) c);
+            } else {
+                // Runs of other characters are encoded as UTF-8 together, 
+                // so that surrogate pairs stay whole
+                int end = i + 1;
+                while (end < length && text.charAt(end) >= 0x80) {
+                    end++;
+                }
+                write(text.subSequence(i, end));
+                i = end - 1;
+            }
+        }
+        return write((byte) '"');
+    }
+
+    /**
+     * Writes the decimal digits of a number
+     *
+     * @param value holds the number
+     * @return this sink
+     * @throws IOException if the buffer had to be written and could not be
+     */
+    public ByteSink write(int value) throws IOException {
+        if (value == Integer.MIN_VALUE) {
+            return write(MIN_INT);
+        }
+        if (bytes.length - position < 11) {
+            drain();
+        }
+        if (value < 0) {
+            bytes[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+        return this;
+    }
+
+    /**
+     * Writes a line break
+     *
+     * @return this sink
+     * @throws IOException if the buffer had to be written and could not be
+     */
+    public ByteSink newLine() throws IOException {
+        return write((byte) '\n');
+    }
+
+    /**
+     * Writes out everything collected so far, flushing the stream the sink
+     * writes to if there is one
+     *
+     * @throws IOException if the bytes could not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    /**
+     * Writes out everything collected so far and closes the channel
+     *
+     * @throws IOException if the bytes could not be written or the channel 
+     * could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /*
+     * Writes the buffer to the channel and empties it
+     */
+    private void drain() throws IOException {
+        buffer.clear().limit(position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        position = 0;
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * An instance of class <code>DonorImporter</code> adds old androids listed in
+ * a CSV or TSV file to a <code>Setup</code>, instead of generating them at
+ * random.
+ * <p>
+ * Every row holds one android: its serial number, model, brain, mobility, 
+ * vision, arms, media center and power plant, in that order unless the file
+ * starts with a header naming the columns (<code>serialNumber</code>, <code>
+ * model</code>, <code>brain</code>, <code>mobility</code>, <code>vision</code>,
+ * <code>arms</code>, <code>mediaCenter</code>, <code>powerPlant</code>). 
+ * Fields are separated by tabs if the first line holds one and by commas 
+ * otherwise, and may be surrounded by double quotes.
+ * <p>
+ * The file is read through a fixed size buffer and rows are parsed straight
+ * from its bytes: serial numbers are read as numbers and the other fields are
+ * matched against the known models and part values, so no Strings are 
+ * created for the rows. Androids are added in batches, which keeps memory 
+ * use bounded no matter how large the file is. Rows that are not valid are
+ * skipped and counted, keeping the first few reasons for the report.
+ *
+ * @author Wellington Regis
+ */
+public class DonorImporter {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_ERRORS = 10;
+    private static final int MAX_FIELDS = 16;
+    private static final int SERIAL_NUMBER = PartType.COUNT; // roles of fields
+    private static final int MODEL = PartType.COUNT + 1;
+    private static final int ROLES = PartType.COUNT + 2;
+    private static final Model[] MODELS = Model.ofLine(Line.OLD);
+    private static final PartType[] PARTS = PartType.values();
+
+    private final Setup s;
+    private final byte[][] modelNames;
+    private final List<List<byte[]>> partValues; // known values by part, in code order
+    private final int[] roleOf; // role of each column
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] batchSerialNumbers;
+    private final long[] batchCodes;
+    private final List<String> errors;
+    private int batchSize;
+    private byte delimiter;
+    private long rows;
+    private long imported;
+    private long rejected;
+    private long elapsedNanos;
+
+    /**
+     * Constructor for the <code>DonorImporter</code> class
+     *
+     * @param s holds the setup the old androids are added to
+     */
+    public DonorImporter(Setup s) {
+        this.s = s;
+        this.modelNames = new byte[MODELS.length][];
+        for (int i = 0; i < MODELS.length; i++) {
+            modelNames[i] = MODELS[i].getName().getBytes(StandardCharsets.UTF_8);
+        }
+        this.partValues = new ArrayList<>(PartType.COUNT);
+        for (int i = 0; i < PartType.COUNT; i++) {
+            partValues.add(new ArrayList<>());
+        }
+        this.roleOf = new int[MAX_FIELDS];
+        this.starts = new int[MAX_FIELDS];
+        this.ends = new int[MAX_FIELDS];
+        this.batchSerialNumbers = new int[Utilities.CHUNK_SIZE];
+        this.batchCodes = new long[Utilities.CHUNK_SIZE];
+        this.errors = new ArrayList<>();
+    }
+
+    /**
+     * Reads a file and adds the old androids it lists
+     *
+     * @param file holds the path of the CSV or TSV file
+     * @return the amount of old androids added
+     * @throws IOException if the file could not be read or a line is longer 
+     * than the buffer
+     */
+    public long importFile(Path file) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long line = 0;
+        boolean firstLine = true;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                endOfFile = channel.read(buffer) < 0;
+                int limit = buffer.position();
+                int lineStart = 0;
+
+                // Handles every complete line in the buffer, plus the last 
+                // line of the file if it does not end with a line break
+                for (int i = 0; i < limit || (endOfFile && lineStart < limit); i++) {
+                    if (i < limit && bytes[i] != '\n') {
+                        continue;
+                    }
+                    int lineEnd = i;
+                    if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                        lineEnd--;
+                    }
+                    line++;
+                    if (firstLine) {
+                        firstLine = false;
+                        if (readHeader(bytes, lineStart, lineEnd)) {
+                            checkHeader(file);
+                            lineStart = i + 1;
+                            continue;
+                        }
+                    }
+                    if (lineEnd > lineStart) {
+                        rows++;
+                        parseRow(bytes, lineStart, lineEnd, line);
+                    }
+                    lineStart = i + 1;
+                }
+
+                // Moves an incomplete line to the start of the buffer
+                if (lineStart == 0 && limit == bytes.length) {
+                    throw new IOException("Line " + (line + 1) + " of " + file + " is longer than " + BUFFER_SIZE + " bytes");
+                }
+                System.arraycopy(bytes, Math.min(lineStart, limit), bytes, 0, limit - Math.min(lineStart, limit));
+                buffer.clear().position(limit - Math.min(lineStart, limit));
+            }
+        }
+        flush();
+        elapsedNanos += System.nanoTime() - start;
+        return imported;
+    }
+
+    /**
+     * Gets the amount of rows read, not counting the header
+     *
+     * @return the amount of rows read
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the amount of old androids added
+     *
+     * @return the amount of old androids added
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Gets the amount of rows skipped because they were not valid
+     *
+     * @return the amount of rows skipped
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Gets the reasons the first rows were skipped for
+     *
+     * @return up to ten messages, each giving a line number and a reason
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Gets the amount of rows read per second
+     *
+     * @return the amount of rows read per second
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Gets the time spent importing
+     *
+     * @return the time spent importing, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /*
+     * Picks the delimiter from the first line and, if the line is a header, 
+     * the role of each column. Returns true if the line is a header.
+     */
+    private boolean readHeader(byte[] bytes, int start, int end) {
+        delimiter = ',';
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == '\t') {
+                delimiter = '\t';
+                break;
+            }
+        }
+
+        // Default order: parts in PartType order after serial number and model
+        for (int i = 0; i < MAX_FIELDS; i++) {
+            roleOf[i] = i == 0 ? SERIAL_NUMBER : i == 1 ? MODEL : i < ROLES ? i - 2 : -1;
+        }
+        int fields = split(bytes, start, end);
+        if (end == start || fields < 0 || (ends[0] > starts[0] && isDigit(bytes[starts[0]]))) {
+            return false;
+        }
+
+        Arrays.fill(roleOf, -1);
+        for (int f = 0; f < fields && f < MAX_FIELDS; f++) {
+            String name = new String(bytes, starts[f], ends[f] - starts[f], StandardCharsets.UTF_8);
+            if (name.equals("serialNumber")) {
+                roleOf[f] = SERIAL_NUMBER;
+            } else if (name.equals("model")) {
+                roleOf[f] = MODEL;
+            } else {
+                for (PartType part : PARTS) {
+                    if (part.getName().equals(name)) {
+                        roleOf[f] = part.ordinal();
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Checks that the header names every column needed
+     */
+    private void checkHeader(Path file) throws IOException {
+        boolean[] named = new boolean[ROLES];
+        for (int role : roleOf) {
+            if (role >= 0) {
+                named[role] = true;
+            }
+        }
+        for (int role = 0; role < ROLES; role++) {
+            if (!named[role]) {
+                String name = role == SERIAL_NUMBER ? "serialNumber" 
+                        : role == MODEL ? "model" : PARTS[role].getName();
+                throw new IOException("The header of " + file + " has no column " + name);
+            }
+        }
+    }
+
+    /*
+     * Parses a row and adds it to the batch, or counts it as rejected
+     */
+    private void parseRow(byte[] bytes, int start, int end, long line) {
+        int fields = split(bytes, start, end);
+        if (fields < 0) {
+            reject(line, "more than " + MAX_FIELDS + " fields");
+            return;
+        }
+
+        int serialNumber = -1;
+        Model model = null;
+        long codes = 0L;
+        int found = 0;
+        for (int f = 0; f < fields; f++) {
+            int role = roleOf[f];
+            if (role < 0) {
+                continue;
+            }
+            found++;
+            if (role == SERIAL_NUMBER) {
+                serialNumber = parseSerialNumber(bytes, starts[f], ends[f]);
+                if (serialNumber < 0) {
+                    reject(line, "serial number is not 7 digits long");
+                    return;
+                }
+            } else if (role == MODEL) {
+                int m = match(modelNames, bytes, starts[f], ends[f]);
+                if (m < 0) {
+                    reject(line, "unknown model of old android " + text(bytes, f));
+                    return;
+                }
+                model = MODELS[m];
+            } else {
+                PartType part = PARTS[role];
+                if (ends[f] == starts[f]) {
+                    reject(line, "missing " + part.getName());
+                    return;
+                }
+                int code = partCode(part, bytes, starts[f], ends[f]);
+                if (code < 0) {
+                    reject(line, "too many different values of " + part.getName());
+                    return;
+                }
+                codes = Robot.withPartCode(codes, part, code);
+            }
+        }
+        if (found < ROLES) {
+            reject(line, "expected " + ROLES + " fields but found " + found);
+            return;
+        }
+        if (!s.getSerialNumberAllocator().reserve(serialNumber)) {
+            reject(line, "serial number " + serialNumber + " is already in use");
+            return;
+        }
+
+        batchSerialNumbers[batchSize] = serialNumber;
+        batchCodes[batchSize] = Robot.withModel(codes, model);
+        if (++batchSize == batchSerialNumbers.length) {
+            flush();
+        }
+    }
+
+    /*
+     * Adds the androids of the batch to the setup
+     */
+    private void flush() {
+        s.addDonors(batchSerialNumbers, batchCodes, batchSize);
+        imported += batchSize;
+        batchSize = 0;
+    }
+
+    /*
+     * Finds the fields of a line, removing surrounding spaces and quotes.
+     * Returns the amount of fields or -1 if there are too many.
+     */
+    private int split(byte[] bytes, int start, int end) {
+        int fields = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || bytes[i] == delimiter) {
+                if (fields == MAX_FIELDS) {
+                    return -1;
+                }
+                int a = fieldStart;
+                int b = i;
+                while (a < b && bytes[a] == ' ') {
+                    a++;
+                }
+                while (b > a && bytes[b - 1] == ' ') {
+                    b--;
+                }
+                if (b - a >= 2 && bytes[a] == '"' && bytes[b - 1] == '"') {
+                    a++;
+                    b--;
+                }
+                starts[fields] = a;
+                ends[fields] = b;
+                fields++;
+                fieldStart = i + 1;
+            }
+        }
+        return fields;
+    }
+
+    /*
+     * Reads a 7 digit serial number, returning -1 if the field is not one
+     */
+    private static int parseSerialNumber(byte[] bytes, int start, int end) {
+        if (end - start != 7) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            if (!isDigit(bytes[i])) {
+                return -1;
+            }
+            value = value * 10 + (bytes[i] - '0');
+        }
+        return SerialNumberAllocator.isValid(value) ? value : -1;
+    }
+
+    /*
+     * Gets the dictionary code of a part value, or -1 if the dictionary is 
+     * full. Only values never seen before by this importer become Strings.
+     */
+    private int partCode(PartType part, byte[] bytes, int start, int end) {
+        List<byte[]> known = partValues.get(part.ordinal());
+        for (int code = 0; code < known.size(); code++) {
+            byte[] value = known.get(code);
+            if (value != null && equals(value, bytes, start, end)) {
+                return code;
+            }
+        }
+        int code;
+        try {
+            code = PartDictionary.encode(part, new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        } catch (IllegalStateException ex) {
+            return -1;
+        }
+        while (known.size() <= code) {
+            known.add(null);
+        }
+        known.set(code, PartDictionary.decode(part, code).getBytes(StandardCharsets.UTF_8));
+        return code;
+    }
+
+    /*
+     * Finds the position of a value among candidates, or -1
+     */
+    private static int match(byte[][] candidates, byte[] bytes, int start, int end) {
+        for (int i = 0; i < candidates.length; i++) {
+            if (equals(candidates[i], bytes, start, end)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Compares a value with a range of bytes
+     */
+    private static boolean equals(byte[] value, byte[] bytes, int start, int end) {
+        if (value.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] != bytes[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Checks whether a byte is an ASCII digit
+     */
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /*
+     * Gets the text of a field, used only in error messages
+     */
+    private String text(byte[] bytes, int field) {
+        return new String(bytes, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Counts a row as rejected, keeping the reason if there are few so far
+     */
+    private void reject(long line, String reason) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("Line " + line + ": " + reason);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * An instance of class <code>InputReader</code> splits a stream into words
+ * and numbers, reading it a large block at a time and working on its bytes 
+ * directly. Numbers are parsed digit by digit, so reading one allocates 
+ * nothing, and a word that is not a number is skipped over before the error 
+ * is reported, so a caller asking again gets the next word instead of the 
+ * same one forever.
+ * <p>
+ * Words are separated by spaces, tabs and line breaks. Methods whose name 
+ * mentions lines stop at the end of the current line, so that input made of
+ * one command per line can be read without mixing up lines.
+ *
+ * @author Wellington Regis
+ */
+public class InputReader {
+    private static final int EOF = -1;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Constructor for the <code>InputReader</code> class
+     *
+     * @param in holds the stream to be read
+     */
+    public InputReader(InputStream in) {
+        this(in, 1 << 16);
+    }
+
+    /**
+     * Constructor for the <code>InputReader</code> class
+     *
+     * @param in holds the stream to be read
+     * @param bufferSize holds the amount of bytes read from the stream at a
+     * time
+     */
+    public InputReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Checks whether there is another word, skipping any spaces and line 
+     * breaks before it
+     *
+     * @return true if there is another word
+     * @throws UncheckedIOException if the stream could not be read
+     */
+    public boolean hasNext() {
+        int b;
+        while ((b = peek()) != EOF && isSpace(b)) {
+            position++;
+        }
+        return b != EOF;
+    }
+
+    /**
+     * Checks whether there is another word on the current line, skipping any
+     * spaces before it but not the end of the line
+     *
+     * @return true if there is another word on the line
+     * @throws UncheckedIOException if the stream could not be read
+     */
+    public boolean hasNextOnLine() {
+        int b;
+        while ((b = peek()) != EOF && b != '\n' && isSpace(b)) {
+            position++;
+        }
+        return b != EOF && b != '\n';
+    }
+
+    /**
+     * Checks whether the next word starts with a particular character, 
+     * without reading it
+     *
+     * @param c holds the character, which must be ASCII
+     * @return true if there is another word and it starts with that character
+     * @throws UncheckedIOException if the stream could not be read
+     */
+    public boolean nextStartsWith(char c) {
+        return hasNext() && peek() == c;
+    }
+
+    /**
+     * Reads the next word
+     *
+     * @return the next word
+     * @throws NoSuchElementException if the stream has ended
+     * @throws UncheckedIOException if the stream could not be read
+     */
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ByteArrayOutputStream word = new ByteArrayOutputStream(16);
+        int b;
+        while ((b = peek()) != EOF && !isSpace(b)) {
+            word.write(b);
+            position++;
+        }
+        return new String(word.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next word and finds it among a set of words, ignoring case,
+     * without creating a string for it
+     *
+     * @param words holds the words the next word is compared with, which 
+     * must be ASCII
+     * @return the position of the word in 'words' or -1 if it is not one of
+     * them
+     * @throws NoSuchElementException if the stream has ended
+     * @throws UncheckedIOException if the stream could not be read
+     */
+    public int nextOf(String... words) {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        // Every word is a candidate until one of its characters differs
+        long candidates = words.length >= 64 ? -1L : (1L << words.length) - 1;
+        int length = 0;
+        int b;
+        while ((b = peek()) != EOF && !isSpace(b)) {
+            for (int i = 0; i < words.length && i < 64; i++) {
+                if ((candidates & (1L << i)) != 0 && (length >= words[i].length() 
+                        || Character.toLowerCase(words[i].charAt(length)) != Character.toLowerCase((char) b))) {
+                    candidates &= ~(1L << i);
+                }
+            }
+            length++;
+            position++;
+        }
+        for (int i = 0; i < words.length && i < 64; i++) {
+            if ((candidates & (1L << i)) != 0 && words[i].length() == length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the next word as a whole number, with an optional sign. A word 
+     * that is not a number is still read, so that the following word comes
+     * next.
+     *
+     * @return the number
+     * @throws NumberFormatException if the word is not a number or does not
+     * fit in an int
+     * @throws NoSuchElementException if the stream has ended
+     * @throws UncheckedIOException if the stream could not be read
+     */
+    public int nextInt() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int b = peek();
+        boolean negative = b == '-';
+        if (b == '-' || b == '+') {
+            position++;
+        }
+
+        // Accumulates negatively, as the smallest int has no positive twin
+        long value = 0;
+        int digits = 0;
+        boolean valid = true;
+        while ((b = peek()) != EOF && !isSpace(b)) {
+            if (b < '0' || b > '9' || value < Integer.MIN_VALUE) {
+                valid = false;
+            } else {
+                value = value * 10 - (b - '0');
+                digits++;
+            }
+            position++;
+        }
+        if (!valid || digits == 0 || (!negative && value == Integer.MIN_VALUE) || value < Integer.MIN_VALUE) {
+            throw new NumberFormatException("Not a whole number");
+        }
+        return (int) (negative ? value : -value);
+    }
+
+    /**
+     * Reads whatever is left of the current line, without the line break and
+     * any spaces around it
+     *
+     * @return the rest of the line, which may be empty
+     * @throws UncheckedIOException if the stream could not be read
+     */
+    public String restOfLine() {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(32);
+        int b;
+        while ((b = peek()) != EOF && b != '\n') {
+            line.write(b);
+            position++;
+        }
+        if (b == '\n') {
+            position++;
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Skips whatever is left of the current line, including the line break
+     *
+     * @throws UncheckedIOException if the stream could not be read
+     */
+    public void skipLine() {
+        int b;
+        while ((b = peek()) != EOF) {
+            position++;
+            if (b == '\n') {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Gets the next byte without reading it, filling the buffer if needed
+     */
+    private int peek() {
+        if (position == limit) {
+            try {
+                limit = in.read(buffer, 0, buffer.length);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position] & 0xFF;
+    }
+
+    /*
+     * Checks whether a byte separates words
+     */
+    private static boolean isSpace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+}
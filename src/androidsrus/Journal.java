@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+/**
+ * An instance of class <code>Journal</code> keeps an append-only log of the
+ * robots added to a <code>Setup</code>: old androids as they are created and
+ * new robots along with the old androids each of their parts came from. 
+ * After a crash, replaying the log onto the last snapshot (or onto an empty
+ * setup) brings back every robot and part assignment that was logged.
+ * <p>
+ * Robots are logged in batches, each written with a single sequential write
+ * as a frame holding its length, a CRC-32 checksum and its records. Every 
+ * frame also holds the part dictionary, so it can be read back by any run.
+ * How often frames are forced to disk is configurable, trading durability 
+ * for speed. A frame that was only partly written when the program stopped
+ * fails its checksum and is cut off when the log is replayed.
+ * <p>
+ * Once the log has grown by a configurable amount of batches it is compacted:
+ * a snapshot of the setup is saved and the log is emptied.
+ *
+ * @author Wellington Regis
+ */
+public class Journal implements Closeable {
+    private static final int MAGIC = 0x4C415241; // "ARAL" in little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16; // magic, version and seed
+    private static final int FRAME_HEADER_SIZE = 8; // length and checksum
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final byte DONOR = 1;
+    private static final byte BUILD = 2;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long seed;
+    private final int forceEvery;
+    private final Path snapshot;
+    private final int compactEvery;
+    private final CRC32 checksum;
+    private ByteBuffer buffer;
+    private int unforced;
+    private int uncompacted;
+
+    /*
+     * Constructor for class Journal
+     */
+    private Journal(Path file, FileChannel channel, long seed, int forceEvery, Path snapshot, int compactEvery) {
+        this.file = file;
+        this.channel = channel;
+        this.seed = seed;
+        this.forceEvery = forceEvery;
+        this.snapshot = snapshot;
+        this.compactEvery = compactEvery;
+        this.checksum = new CRC32();
+        this.buffer = ByteBuffer.allocate(1 << 16).order(ORDER);
+        this.unforced = 0;
+        this.uncompacted = 0;
+    }
+
+    /**
+     * Opens a journal, creating it if it does not exist yet
+     *
+     * @param file holds the path of the journal
+     * @param seed holds the seed recorded in a new journal. An existing 
+     * journal keeps the seed it was created with.
+     * @param forceEvery holds after how many batches the journal is forced to
+     * disk: 1 forces every batch, 0 leaves it to the operating system
+     * @param snapshot holds the path of the snapshot written when compacting,
+     * or null if the journal is never compacted
+     * @param compactEvery holds after how many batches the journal is 
+     * compacted, 0 meaning only when {@link #compact(Setup)} is called
+     * @return the journal, positioned at its end
+     * @throws IOException if the journal could not be opened or is not a 
+     * journal
+     */
+    public static Journal open(Path file, long seed, int forceEvery, Path snapshot, int compactEvery) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, 
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+            if (channel.size() < HEADER_SIZE) {
+                // New journal, or one whose header was never completed
+                header.putInt(MAGIC).putInt(VERSION).putLong(seed).flip();
+                channel.truncate(0);
+                writeFully(channel, header, 0);
+                channel.force(true);
+            } else {
+                readFully(channel, header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC) {
+                    throw new IOException("Not a journal file: " + file);
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported journal version " + version + " in " + file);
+                }
+                seed = header.getLong();
+            }
+            channel.position(channel.size());
+            return new Journal(file, channel, seed, forceEvery, snapshot, compactEvery);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the seed of the run that created the journal
+     *
+     * @return the seed of the run that created the journal
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Checks whether the journal holds any batches
+     *
+     * @return true if there is something to replay
+     * @throws IOException if the size of the journal could not be read
+     */
+    public boolean hasRecords() throws IOException {
+        return channel.size() > HEADER_SIZE;
+    }
+
+    /**
+     * Adds every robot logged in the journal to a setup, along with the 
+     * origin and destination of the parts of new robots. Robots the setup 
+     * already holds, e.g. because they were saved in a snapshot before the
+     * journal was compacted, are skipped. A damaged batch at the end of the
+     * journal is cut off, together with anything following it.
+     *
+     * @param s holds the setup the robots are added to
+     * @return the amount of robots added
+     * @throws IOException if the journal could not be read or refers to old
+     * androids the setup does not hold
+     */
+    public int replay(Setup s) throws IOException {
+        RobotRegistry robots = s.getRobotViaSerial();
+        long position = HEADER_SIZE;
+        long end = channel.size();
+        int replayed = 0;
+        ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE).order(ORDER);
+
+        while (position + FRAME_HEADER_SIZE <= end) {
+            frameHeader.clear();
+            readFully(channel, frameHeader, position);
+            frameHeader.flip();
+            int length = frameHeader.getInt();
+            int expected = frameHeader.getInt();
+            if (length < 0 || position + FRAME_HEADER_SIZE + length > end) {
+                break;
+            }
+            ByteBuffer frame = ensureBuffer(length);
+            frame.limit(length);
+            readFully(channel, frame, position + FRAME_HEADER_SIZE);
+            checksum.reset();
+            checksum.update(frame.array(), 0, length);
+            if ((int) checksum.getValue() != expected) {
+                break;
+            }
+            frame.flip();
+            try {
+                replayed += replayFrame(s, robots, frame);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+                throw new IOException("Journal " + file + " holds a damaged batch at byte " + position, ex);
+            }
+            position += FRAME_HEADER_SIZE + length;
+        }
+
+        // Cuts off a batch that was not completely written
+        if (position < end) {
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return replayed;
+    }
+
+    /**
+     * Logs a batch of old androids that were just added to a setup
+     *
+     * @param s holds the setup the androids were added to
+     * @param firstSlot holds the registry slot of the first android
+     * @param count holds the amount of androids
+     * @throws IOException if the batch could not be written
+     */
+    public void appendDonors(Setup s, int firstSlot, int count) throws IOException {
+        RobotRegistry robots = s.getRobotViaSerial();
+        ByteBuffer frame = startFrame(count * (1 + Integer.BYTES + Long.BYTES));
+        for (int slot = firstSlot; slot < firstSlot + count; slot++) {
+            frame.put(DONOR).putInt(robots.getSerialNumberAt(slot)).putLong(robots.getCodesAt(slot));
+        }
+        finishFrame(s, frame, true);
+    }
+
+    /**
+     * Logs a batch of new robots that were just added to a setup, along with
+     * the old androids their parts came from
+     *
+     * @param s holds the setup the robots were added to
+     * @param firstSlot holds the registry slot of the first robot
+     * @param count holds the amount of robots
+     * @throws IOException if the batch could not be written
+     */
+    public void appendBuilds(Setup s, int firstSlot, int count) throws IOException {
+        appendBuilds(s, firstSlot, count, true);
+    }
+
+    /**
+     * Logs a batch of new robots that were just added to a setup, along with
+     * the old androids their parts came from. While more robots are being 
+     * built the setup cannot be saved, so compacting can be left for {@link 
+     * #compactIfDue(Setup)} once the build is done.
+     *
+     * @param s holds the setup the robots were added to
+     * @param firstSlot holds the registry slot of the first robot
+     * @param count holds the amount of robots
+     * @param compact holds whether the journal may be compacted now if due
+     * @throws IOException if the batch could not be written
+     */
+    public void appendBuilds(Setup s, int firstSlot, int count, boolean compact) throws IOException {
+        RobotRegistry robots = s.getRobotViaSerial();
+        ProvenanceStore provenance = s.getProvenance();
+        ByteBuffer frame = startFrame(count * (1 + Integer.BYTES + Long.BYTES + PartType.COUNT * Integer.BYTES));
+        for (int slot = firstSlot; slot < firstSlot + count; slot++) {
+            frame.put(BUILD).putInt(robots.getSerialNumberAt(slot)).putLong(robots.getCodesAt(slot));
+            for (PartType part : PartType.values()) {
+                frame.putInt(provenance.getOriginAt(slot, part));
+            }
+        }
+        finishFrame(s, frame, compact);
+    }
+
+    /**
+     * Compacts the journal if enough batches were logged since it was last 
+     * compacted, e.g. once a build that logged batches without compacting is
+     * done
+     *
+     * @param s holds the setup to be saved
+     * @throws IOException if the snapshot could not be saved or the journal 
+     * could not be emptied
+     */
+    public void compactIfDue(Setup s) throws IOException {
+        if (compactEvery > 0 && snapshot != null && uncompacted >= compactEvery) {
+            compact(s);
+        }
+    }
+
+    /**
+     * Saves a snapshot of a setup and empties the journal, since everything
+     * it holds is now in the snapshot. If the program stops in between, the 
+     * robots replayed from the journal are already in the snapshot and are 
+     * skipped.
+     *
+     * @param s holds the setup to be saved
+     * @throws IOException if the snapshot could not be saved or the journal 
+     * could not be emptied
+     * @throws IllegalStateException if the journal has no snapshot path
+     */
+    public void compact(Setup s) throws IOException {
+        if (snapshot == null) {
+            throw new IllegalStateException("No snapshot to compact journal " + file + " into");
+        }
+        Snapshot.write(s, snapshot);
+        channel.truncate(HEADER_SIZE);
+        channel.position(HEADER_SIZE);
+        channel.force(true);
+        unforced = 0;
+        uncompacted = 0;
+    }
+
+    /**
+     * Forces everything logged so far to disk and closes the journal
+     *
+     * @throws IOException if the journal could not be forced or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (unforced > 0) {
+                channel.force(false);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /*
+     * Adds the robots of one frame to a setup, returning how many were added
+     */
+    private static int replayFrame(Setup s, RobotRegistry robots, ByteBuffer frame) throws IOException {
+        // Codes in the frame are mapped to the codes of this run
+        int[][] recode = new int[PartType.COUNT][];
+        for (PartType part : PartType.values()) {
+            recode[part.ordinal()] = new int[frame.getShort()];
+            for (int code = 0; code < recode[part.ordinal()].length; code++) {
+                byte[] value = new byte[frame.getShort()];
+                frame.get(value);
+                recode[part.ordinal()][code] = PartDictionary.encode(part, new String(value, StandardCharsets.UTF_8));
+            }
+        }
+
+        int replayed = 0;
+        int[] origins = new int[PartType.COUNT];
+        int[] donors = new int[PartType.COUNT]; // registry slots of the origins
+        while (frame.hasRemaining()) {
+            byte type = frame.get();
+            int serialNumber = frame.getInt();
+            long codes = frame.getLong();
+            for (PartType part : PartType.values()) {
+                codes = Robot.withPartCode(codes, part, recode[part.ordinal()][Robot.partCodeOf(codes, part)]);
+            }
+            if (type == BUILD) {
+                for (int i = 0; i < PartType.COUNT; i++) {
+                    origins[i] = frame.getInt();
+                }
+            } else if (type != DONOR) {
+                throw new IllegalArgumentException("Unknown record type " + type);
+            }
+            if (robots.contains(serialNumber)) {
+                continue;
+            }
+
+            s.getSerialNumberAllocator().reserve(serialNumber);
+            if (type == DONOR) {
+                int slot = robots.add(new Robot(serialNumber, codes));
+                for (PartType part : PartType.values()) {
+                    part.getPool(s).add(slot);
+                }
+            } else {
+                // Origins are stored against the slot the robot is about to 
+                // get, then the robot is added, then the destinations
+                int slot = robots.size();
+                for (PartType part : PartType.values()) {
+                    int donor = robots.slotOf(origins[part.ordinal()]);
+                    if (donor < 0) {
+                        throw new IOException("Robot " + serialNumber + " took its " + part.getName()
+                                + " from unknown android " + origins[part.ordinal()]);
+                    }
+                    donors[part.ordinal()] = donor;
+                    s.getProvenance().setOriginAt(slot, part, origins[part.ordinal()]);
+                }
+                robots.add(new Robot(serialNumber, codes));
+                for (PartType part : PartType.values()) {
+                    part.getPool(s).remove(donors[part.ordinal()]);
+                    s.getProvenance().setDestinationAt(donors[part.ordinal()], part, serialNumber);
+                }
+            }
+            replayed++;
+        }
+        return replayed;
+    }
+
+    /*
+     * Starts a frame with room for its header and the part dictionary, 
+     * followed by the given amount of bytes of records
+     */
+    private ByteBuffer startFrame(int recordBytes) {
+        int dictionaryBytes = 0;
+        for (PartType part : PartType.values()) {
+            dictionaryBytes += Short.BYTES;
+            for (int code = 0; code < PartDictionary.size(part); code++) {
+                dictionaryBytes += Short.BYTES + PartDictionary.decode(part, code).length() * 3;
+            }
+        }
+        ByteBuffer frame = ensureBuffer(FRAME_HEADER_SIZE + dictionaryBytes + recordBytes);
+        frame.position(FRAME_HEADER_SIZE);
+        for (PartType part : PartType.values()) {
+            int count = PartDictionary.size(part);
+            frame.putShort((short) count);
+            for (int code = 0; code < count; code++) {
+                byte[] value = PartDictionary.decode(part, code).getBytes(StandardCharsets.UTF_8);
+                frame.putShort((short) value.length).put(value);
+            }
+        }
+        return frame;
+    }
+
+    /*
+     * Fills in the header of a frame and writes it out, forcing the journal
+     * to disk and compacting it when due, unless compacting has to wait
+     */
+    private void finishFrame(Setup s, ByteBuffer frame, boolean compact) throws IOException {
+        int length = frame.position() - FRAME_HEADER_SIZE;
+        checksum.reset();
+        checksum.update(frame.array(), FRAME_HEADER_SIZE, length);
+        frame.putInt(0, length).putInt(Integer.BYTES, (int) checksum.getValue());
+        frame.flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+
+        if (forceEvery > 0 && ++unforced >= forceEvery) {
+            channel.force(false);
+            unforced = 0;
+        }
+        if (compactEvery > 0) {
+            uncompacted++;
+        }
+        if (compact) {
+            compactIfDue(s);
+        }
+    }
+
+    /*
+     * Gets the reusable buffer, cleared and with room for at least the given
+     * amount of bytes
+     */
+    private ByteBuffer ensureBuffer(int bytes) {
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2)).order(ORDER);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /*
+     * Reads from a position of the channel until the buffer is full
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    /*
+     * Writes the whole buffer at a position of the channel
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+/**
+ * The lines of robots. Old androids from the old line donate their parts to
+ * the robots of the new line.
+ *
+ * @author Wellington Regis
+ */
+public enum Line {
+    OLD("old", "old line of robots"),
+    NEW("new", "new line of robots");
+
+    private final String name;
+    private final String description;
+
+    /*
+     * Constructor for enum Line
+     */
+    private Line(String name, String description) {
+        this.name = name;
+        this.description = description;
+    }
+
+    /**
+     * Gets the short name of the line (e.g. "old")
+     *
+     * @return the short name of the line
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the description of the line as used in messages
+     *
+     * @return the description of the line
+     */
+    public String getDescription() {
+        return description;
+    }
+}
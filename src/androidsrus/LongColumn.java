@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+/**
+ * An <code>LongColumn</code> is a fixed length sequence of longs, indexed from
+ * 0, used to store one field of many robots. Cells start out as 0. Where the
+ * cells live depends on the <code>Storage</code> that created the column.
+ * <p>
+ * Threads may write different cells at the same time.
+ *
+ * @author Wellington Regis
+ */
+public interface LongColumn {
+
+    /**
+     * Gets the value of a cell
+     *
+     * @param index holds a position from 0 to <code>length() - 1</code>
+     * @return the value of the cell
+     */
+    long get(int index);
+
+    /**
+     * Sets the value of a cell
+     *
+     * @param index holds a position from 0 to <code>length() - 1</code>
+     * @param value holds the new value of the cell
+     */
+    void set(int index, long value);
+
+    /**
+     * Gets the amount of cells
+     *
+     * @return the amount of cells
+     */
+    int length();
+
+    /**
+     * Creates a column of the same storage holding the values of this one,
+     * cut or padded with 0 to a new length
+     *
+     * @param length holds the length of the new column
+     * @return the new column
+     */
+    LongColumn copyOf(int length);
+}
@@ -16,6 +16,7 @@
  */
 package androidsrus;
 
+import java.io.*;
 import java.util.*;
 
 /**
@@ -38,36 +39,9 @@ public class Menu {
         int menuOption; // Used for dealing with user choices
         int robotOption; // Used for dealing with user choices
         int robotSerialNumber; // Stores serial number from user input
+        int robotSlot; // Stores registry slot of robot found through serial number
         boolean exit = false; // Used for exiting the program
-        int andyCounter = 0; // Used to count amount of robots
-        int bettyCounter = 0; // Used to count amount of robots
-        int bobiCounter = 0; // Used to count amount of robots
-        int fredCounter = 0; // Used to count amount of robots
-
-        /*
-         * Counts the amount of robots for each type of robot from the new line
-         */
-        Collection<Robot> robots = s.getRobotViaSerial().values();
-        Iterator<Robot> itr = robots.iterator();
-        while (itr.hasNext()) {
-            Robot robot = itr.next();
-            switch (robot.getModel()) {
-                case "Andy the Android":
-                    andyCounter++;
-                    break;
-                case "Betty the Busibot":
-                    bettyCounter++;
-                    break;
-                case "Bobi the Racedroid":
-                    bobiCounter++;
-                    break;
-                case "Fred the Friendlybot":
-                    fredCounter++;
-                    break;
-                default:
-                    break;
-            }
-        }
+        RobotPrinter printer = new RobotPrinter(s); // Used for printing robots
 
         /*
          * Runs until user decides to exit program
@@ -80,141 +54,147 @@ public class Menu {
                     + "\n    (3) View total count of robots from the new line of robots by model"
                     + "\n    (4) View donation details from a particular old robot"
                     + "\n    (5) Exit"
+                    + "\n    (6) Search robots by their parts"
                     + "\nPlease select one of the options above: "
             );
 
             // Gets option from user
-            menuOption = Utilities.getInstance().optionInputHandler(5);
+            menuOption = Utilities.getInstance().optionInputHandler(6);
 
-            switch (menuOption) {
+            try {
+                switch (menuOption) {
 
-                /*
-                 * PRINTS ALL ROBOTS OF A PARTICULAR MODEL FROM THE NEW LINE     
-                 */
-                case 1:
-                    System.out.print("    Here are the available options: "
-                            + "\n        (1) Andy the Android"
-                            + "\n        (2) Betty the Busibot"
-                            + "\n        (3) Bobi the Racedroid"
-                            + "\n        (4) Fred the Friendlybot"
-                            + "\n    Please select one of the models above: "
-                    );
+                    /*
+                     * PRINTS ALL ROBOTS OF A PARTICULAR MODEL FROM THE NEW LINE     
+                     */
+                    case 1:
+                        System.out.print("    Here are the available options: "
+                                + "\n        (1) Andy the Android"
+                                + "\n        (2) Betty the Busibot"
+                                + "\n        (3) Bobi the Racedroid"
+                                + "\n        (4) Fred the Friendlybot"
+                                + "\n    Please select one of the models above: "
+                        );
 
-                    // Gets option from user
-                    robotOption = Utilities.getInstance().optionInputHandler(4);
+                        // Gets option from user
+                        robotOption = Utilities.getInstance().optionInputHandler(4);
 
-                    switch (robotOption) {
-                        case 1:
-                            printsAllRobotsOfModel("Andy the Android", s);
-                            break;
-                        case 2:
-                            printsAllRobotsOfModel("Betty the Busibot", s);
-                            break;
-                        case 3:
-                            printsAllRobotsOfModel("Bobi the Racedroid", s);
-                            break;
-                        case 4:
-                            printsAllRobotsOfModel("Fred the Frienlybot", s);
-                            break;
-                    }
-                    break;
+                        switch (robotOption) {
+                            case 1:
+                                printsAllRobotsOfModel(Model.ANDY, s, printer);
+                                break;
+                            case 2:
+                                printsAllRobotsOfModel(Model.BETTY, s, printer);
+                                break;
+                            case 3:
+                                printsAllRobotsOfModel(Model.BOBI, s, printer);
+                                break;
+                            case 4:
+                                printsAllRobotsOfModel(Model.FRED, s, printer);
+                                break;
+                        }
+                        break;
 
-                /*
-                 * ASKS USER FOR SERIAL NUMBER AND PRINTS THE FOLLOWING
-                 */
-                case 2:
-                    // Asks user for input
-                    System.out.print("    Please select one of the options above: ");
-                    robotSerialNumber = Utilities.getInstance().optionInputHandler(10000000);
+                    /*
+                     * ASKS USER FOR SERIAL NUMBER AND PRINTS THE FOLLOWING
+                     */
+                    case 2:
+                        // Asks user for input
+                        System.out.print("    Please select one of the options above: ");
+                        robotSerialNumber = Utilities.getInstance().optionInputHandler(10000000);
 
-                    // In case there is a robot with this serial number
-                    if (s.getRobotViaSerial().containsKey(robotSerialNumber)) {
-                        Robot robot = s.getRobotViaSerial().get(robotSerialNumber);
+                        // In case there is a robot with this serial number
+                        robotSlot = s.getRobotViaSerial().slotOf(robotSerialNumber);
+                        if (robotSlot >= 0) {
 
-                        // Prints robot info if robot is from the new line or 
-                        // advises user to use option 4 on the menu in case 
-                        // robot belongs to old line of robots
-                        if (robot.getModel().equals("Andy the Android")
-                                || robot.getModel().equals("Betty the Busibot")
-                                || robot.getModel().equals("Bobi the Racedroid")
-                                || robot.getModel().equals("Fred the Friendlybot")) {
-                            Utilities.getInstance().robotDetailsPrinter(robot, s.getPartOrigin().get(robot.getSerialNumber()), s.getRobotViaSerial());
+                            // Prints robot info if robot is from the new line or 
+                            // advises user to use option 4 on the menu in case 
+                            // robot belongs to old line of robots
+                            if (s.getRobotViaSerial().getLineAt(robotSlot) == Line.NEW) {
+                                printer.printDetailsWithOrigins(robotSlot);
+                                printer.flush();
+                            } else {
+                                System.out.println("\nThe serial number entered belongs "
+                                        + "to a robot from our old line of robots. "
+                                        + "\nPlease use option 4 on the menu to "
+                                        + "obtain information on that robot."
+                                );
+                            }
                         } else {
-                            System.out.println("\nThe serial number entered belongs "
-                                    + "to a robot from our old line of robots. "
-                                    + "\nPlease use option 4 on the menu to "
-                                    + "obtain information on that robot."
-                            );
+                            // Prints this in case no match is found for the serial number
+                            System.out.println("\nNo such robot found in our database.");
                         }
-                    } else {
-                        // Prints this in case no match is found for the serial number
-                        System.out.println("\nNo such robot found in our database.");
-                    }
-                    break;
+                        break;
 
-                /*
-                 * DISPLAYS NUMBERS OF ROBOTS FROM NEW LINE BY MODEL
-                 */
-                case 3:
-                    // Prints info
-                    System.out.println("\nThere are:\n"
-                            + "    " + andyCounter + " robots of model Andy the Android\n"
-                            + "    " + bettyCounter + " robots of model Betty the Busibot\n"
-                            + "    " + bobiCounter + " robots of model Bobi the Racedroid\n"
-                            + "    " + fredCounter + " robots of model Fred the Friendlybot\n"
-                    );
-                    break;
+                    /*
+                     * DISPLAYS NUMBERS OF ROBOTS FROM NEW LINE BY MODEL
+                     */
+                    case 3:
+                        // Prints info, using counts kept up to date by the model
+                        // index as robots are added
+                        ModelIndex models = s.getRobotViaSerial().getModelIndex();
+                        System.out.println("\nThere are:\n"
+                                + "    " + models.count(Model.ANDY) + " robots of model Andy the Android\n"
+                                + "    " + models.count(Model.BETTY) + " robots of model Betty the Busibot\n"
+                                + "    " + models.count(Model.BOBI) + " robots of model Bobi the Racedroid\n"
+                                + "    " + models.count(Model.FRED) + " robots of model Fred the Friendlybot\n"
+                        );
+                        break;
 
-                /*
-                 * DISPLAY INFO ON OLD ROBOTS, AS WELL AS INFO ON THE RECEIPIENTS OF THEIR PARTS
-                 */
-                case 4:
-                    // Asks for user input
-                    System.out.print("    Please type in a valid serial number for one of our old Androids: ");
-                    robotSerialNumber = Utilities.getInstance().optionInputHandler(10000000);
+                    /*
+                     * DISPLAY INFO ON OLD ROBOTS, AS WELL AS INFO ON THE RECEIPIENTS OF THEIR PARTS
+                     */
+                    case 4:
+                        // Asks for user input
+                        System.out.print("    Please type in a valid serial number for one of our old Androids: ");
+                        robotSerialNumber = Utilities.getInstance().optionInputHandler(10000000);
 
-                    if (s.getRobotViaSerial().containsKey(robotSerialNumber)) {
-                        Robot robot = s.getRobotViaSerial().get(robotSerialNumber);
+                        robotSlot = s.getRobotViaSerial().slotOf(robotSerialNumber);
+                        if (robotSlot >= 0) {
 
-                        // Advises user to use option 1 on the menu in case 
-                        // robot belongs to new line of robots or else prints 
-                        // robot info if robot is from the old line
-                        if (robot.getModel().equals("Andy the Android")
-                                || robot.getModel().equals("Betty the Busibot")
-                                || robot.getModel().equals("Bobi the Racedroid")
-                                || robot.getModel().equals("Fred the Friendlybot")) {
-                            System.out.println("\nThe serial number entered belongs "
-                                    + "to a robot from our new line of robots. "
-                                    + "\nPlease use option 1 on the menu to "
-                                    + "obtain information on that robot."
-                            );
-                        } else {
-                            System.out.println("\nThe robot requested has the following details:");
-                            Utilities.getInstance().robotDetailsPrinter(robot);
+                            // Advises user to use option 1 on the menu in case 
+                            // robot belongs to new line of robots or else prints 
+                            // robot info if robot is from the old line
+                            if (s.getRobotViaSerial().getLineAt(robotSlot) == Line.NEW) {
+                                System.out.println("\nThe serial number entered belongs "
+                                        + "to a robot from our new line of robots. "
+                                        + "\nPlease use option 1 on the menu to "
+                                        + "obtain information on that robot."
+                                );
+                            } else {
+                                System.out.println("\nThe robot requested has the following details:");
+                                printer.printDetails(robotSlot);
 
-                            // For each part, checks if it has been donated. If 
-                            // yes, prints details of receipient. If no, prints
-                            // a messaged saying that part has not been used yet
-                            // Brain
-                            printReceipientInfo(s, "brain", robotSerialNumber);
-                            printReceipientInfo(s, "mobility", robotSerialNumber);
-                            printReceipientInfo(s, "vision", robotSerialNumber);
-                            printReceipientInfo(s, "arms", robotSerialNumber);
-                            printReceipientInfo(s, "mediaCenter", robotSerialNumber);
-                            printReceipientInfo(s, "powerPlant", robotSerialNumber);
+                                // For each part, checks if it has been donated. If 
+                                // yes, prints details of receipient. If no, prints
+                                // a messaged saying that part has not been used yet
+                                for (PartType part : PartType.values()) {
+                                    printReceipientInfo(s, part, robotSerialNumber, robotSlot, printer);
+                                }
+                                printer.flush();
+                            }
+                        } else {
+                            // Printed in case input serial number doesn't match any robots
+                            System.out.println("Robot not found");
                         }
-                    } else {
-                        // Printed in case input serial number doesn't match any robots
-                        System.out.println("Robot not found");
-                    }
-                    break;
+                        break;
 
-                /*
-                 * EXITS PROGRAM    
-                 */
-                case 5:
-                    exit = true;
-                    break;
+                    /*
+                     * EXITS PROGRAM    
+                     */
+                    case 5:
+                        exit = true;
+                        break;
+
+                    /*
+                     * SEARCHES ROBOTS MEETING A SET OF CONDITIONS
+                     */
+                    case 6:
+                        searchRobots(s, printer);
+                        break;
+                }
+            } catch (IOException ex) {
+                System.out.println("\nCould not print robots: " + ex.getMessage());
             }
         }
     }
@@ -225,32 +205,86 @@ public class Menu {
      * If the part has already been used, prints receipient's details. If not,
      * prints message to user saying that the part hasn't been used yet.
      */
-    private static void printReceipientInfo(Setup s, String part, int robotSerialNumber) {
-        int newRobotSerialNumber;
+    private static void printReceipientInfo(Setup s, PartType part, int robotSerialNumber, int robotSlot, RobotPrinter printer) throws IOException {
+        int newRobotSlot = s.getProvenance().getRecipientSlotAt(robotSlot, part);
 
-        if (s.getPartDestination().get(robotSerialNumber).containsKey(part)) {
-            System.out.println("\nThe " + part + " of Android " 
+        // Whatever the printer holds has to come out before anything else
+        printer.flush();
+        if (newRobotSlot >= 0) {
+            System.out.println("\nThe " + part.getName() + " of Android " 
                     + robotSerialNumber + " was donated to:"
             );
-            newRobotSerialNumber = Integer.parseInt(s.getPartDestination().get(robotSerialNumber).get(part).toString());
-            Robot newRobot = s.getRobotViaSerial().get(newRobotSerialNumber);
-            Utilities.getInstance().robotDetailsPrinter(newRobot, s.getPartOrigin().get(newRobot.getSerialNumber()), s.getRobotViaSerial());
+            printer.printDetailsWithOrigins(newRobotSlot);
         } else {
-            System.out.println("\nThe " + part + " has not been usued yet.");
+            System.out.println("\nThe " + part.getName() + " has not been usued yet.");
         }
     }
 
     /*
-     * Checks all robots and prints the ones with a particular model.
+     * Lets the user put together a query one condition at a time, either an
+     * attribute having a particular value or a part not having been used yet,
+     * then prints every robot meeting all the conditions.
      */
-    private static void printsAllRobotsOfModel(String model, Setup s) {
-        Collection<Robot> robots = s.getRobotViaSerial().values();
-        Iterator<Robot> itr = robots.iterator();
-        while (itr.hasNext()) {
-            Robot robot = itr.next();
-            if (robot.getModel().equals(model)) {
-                Utilities.getInstance().robotDetailsPrinter(robot, s.getPartOrigin().get(robot.getSerialNumber()), s.getRobotViaSerial());
+    private static void searchRobots(Setup s, RobotPrinter printer) throws IOException {
+        AttributeIndex index = s.getAttributeIndex();
+        Attribute[] attributes = Attribute.values();
+        PartType[] parts = PartType.values();
+        RobotQuery query = new RobotQuery();
+        int option;
+
+        do {
+            System.out.print("\n    Conditions so far: " + query
+                    + "\n    Here are the available options: ");
+            for (int i = 0; i < attributes.length; i++) {
+                System.out.print("\n        (" + (i + 1) + ") Robots with a particular " 
+                        + attributes[i].getName());
             }
+            System.out.print("\n        (" + (attributes.length + 1) + ") Old androids with a part not used yet"
+                    + "\n        (" + (attributes.length + 2) + ") Run search"
+                    + "\n    Please select one of the options above: "
+            );
+            option = Utilities.getInstance().optionInputHandler(attributes.length + 2);
+
+            if (option <= attributes.length) {
+                // Offers the values found among existing robots
+                Attribute attribute = attributes[option - 1];
+                List<String> values = index.valuesOf(attribute);
+                System.out.print("    Here are the available options: ");
+                for (int i = 0; i < values.size(); i++) {
+                    System.out.print("\n        (" + (i + 1) + ") " + values.get(i));
+                }
+                System.out.print("\n    Please select one of the values above: ");
+                query.where(attribute, values.get(Utilities.getInstance().optionInputHandler(values.size()) - 1));
+            } else if (option == attributes.length + 1) {
+                System.out.print("    Here are the available options: ");
+                for (int i = 0; i < parts.length; i++) {
+                    System.out.print("\n        (" + (i + 1) + ") " + parts[i].getName());
+                }
+                System.out.print("\n    Please select one of the parts above: ");
+                query.unused(parts[Utilities.getInstance().optionInputHandler(parts.length) - 1]);
+            }
+        } while (option != attributes.length + 2);
+
+        // Prints old androids on their own and new robots along with the
+        // origin of their parts
+        BitSet found = index.search(query);
+        System.out.println("\n" + found.cardinality() + " robots found for " + query);
+        for (int slot = found.nextSetBit(0); slot >= 0; slot = found.nextSetBit(slot + 1)) {
+            printer.print(slot);
+        }
+        printer.flush();
+    }
+
+    /*
+     * Prints all robots of a particular model, going straight to them through
+     * the model index. Robots are collected by the printer and written out in
+     * large batches rather than one at a time.
+     */
+    private static void printsAllRobotsOfModel(Model model, Setup s, RobotPrinter printer) throws IOException {
+        ModelIndex models = s.getRobotViaSerial().getModelIndex();
+        for (int i = 0; i < models.count(model); i++) {
+            printer.printDetailsWithOrigins(models.slotAt(model, i));
         }
+        printer.flush();
     }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+/**
+ * The models of robots, from both the old line of androids and the new line
+ * of robots built from their parts
+ *
+ * @author Wellington Regis
+ */
+public enum Model {
+    MK1("mk1", Line.OLD),
+    MK2("mk2", Line.OLD),
+    MK3("mk3", Line.OLD),
+    MK4("mk4", Line.OLD),
+    MK5("mk5", Line.OLD),
+    ANDY("Andy the Android", Line.NEW),
+    BETTY("Betty the Busibot", Line.NEW),
+    BOBI("Bobi the Racedroid", Line.NEW),
+    FRED("Fred the Friendlybot", Line.NEW);
+
+    /**
+     * Amount of models
+     */
+    public static final int COUNT = values().length;
+
+    private final String name;
+    private final Line line;
+
+    /*
+     * Constructor for enum Model
+     */
+    private Model(String name, Line line) {
+        this.name = name;
+        this.line = line;
+    }
+
+    /**
+     * Gets the name of the model (e.g. "Andy the Android")
+     *
+     * @return the name of the model
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the line the model belongs to
+     *
+     * @return the line the model belongs to
+     */
+    public Line getLine() {
+        return line;
+    }
+
+    /**
+     * Gets the models of a particular line, in the order they are declared
+     *
+     * @param line holds the line
+     * @return a new array with the models of that line
+     */
+    public static Model[] ofLine(Line line) {
+        int count = 0;
+        for (Model model : values()) {
+            if (model.line == line) {
+                count++;
+            }
+        }
+        Model[] models = new Model[count];
+        int i = 0;
+        for (Model model : values()) {
+            if (model.line == line) {
+                models[i++] = model;
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Finds the model with a particular name, given in full (e.g. "Andy the
+     * Android") or by its first word (e.g. "andy" or "mk2"), in any case
+     *
+     * @param name holds the name of the model
+     * @return the model with that name
+     * @throws IllegalArgumentException if there is no model with that name
+     */
+    public static Model fromName(String name) {
+        String wanted = name.trim();
+        for (Model model : values()) {
+            int space = model.name.indexOf(' ');
+            String firstWord = space < 0 ? model.name : model.name.substring(0, space);
+            if (wanted.equalsIgnoreCase(model.name) || wanted.equalsIgnoreCase(firstWord)) {
+                return model;
+            }
+        }
+        throw new IllegalArgumentException("Unknown model: " + name);
+    }
+
+    /**
+     * Gets the name of the model, so that models print as they always have
+     *
+     * @return the name of the model
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
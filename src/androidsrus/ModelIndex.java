@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * An instance of class <code>ModelIndex</code> keeps, for every model, the
+ * registry slots of all robots of that model in the order they were added.
+ * It is updated as robots are added to a <code>RobotRegistry</code>, so the
+ * robots of a model can be listed and counted without going through all 
+ * robots.
+ * <p>
+ * Slots are recorded by the thread adding robots and only counted once they
+ * are published, which the registry does right after publishing its own 
+ * size. Other threads can therefore list the robots of a model while robots
+ * are being added, and every slot they are given holds a robot they can 
+ * read.
+ *
+ * @author Wellington Regis
+ */
+public class ModelIndex {
+    private final int[][] slots; // indexed by model ordinal
+    private final int[] counts; // slots recorded, only used by the adding thread
+    private final AtomicIntegerArray published; // slots other threads can see
+
+    /**
+     * Constructor for the <code>ModelIndex</code> class
+     */
+    public ModelIndex() {
+        this.slots = new int[Model.COUNT][16];
+        this.counts = new int[Model.COUNT];
+        this.published = new AtomicIntegerArray(Model.COUNT);
+    }
+
+    /*
+     * Constructor for class ModelIndex taking the slots of each model, e.g.
+     * when loading a snapshot
+     */
+    ModelIndex(int[][] slots, int[] counts) {
+        this.slots = slots;
+        this.counts = counts;
+        this.published = new AtomicIntegerArray(counts);
+        for (int m = 0; m < Model.COUNT; m++) {
+            if (slots[m].length == 0) {
+                slots[m] = new int[16];
+            }
+        }
+    }
+
+    /**
+     * Records the slot of a robot of a particular model. It is not counted 
+     * until the index is published.
+     *
+     * @param model holds the model of the robot
+     * @param slot holds the registry slot of the robot
+     */
+    public void add(Model model, int slot) {
+        int m = model.ordinal();
+        if (counts[m] == slots[m].length) {
+            slots[m] = Arrays.copyOf(slots[m], counts[m] * 2);
+        }
+        slots[m][counts[m]++] = slot;
+    }
+
+    /**
+     * Makes every slot recorded so far visible to other threads
+     */
+    public void publish() {
+        for (int m = 0; m < Model.COUNT; m++) {
+            if (published.get(m) != counts[m]) {
+                published.lazySet(m, counts[m]);
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of robots of a particular model
+     *
+     * @param model holds the model
+     * @return the amount of robots of that model
+     */
+    public int count(Model model) {
+        return published.get(model.ordinal());
+    }
+
+    /**
+     * Gets the slot of one of the robots of a particular model
+     *
+     * @param model holds the model
+     * @param index holds a position from 0 to <code>count(model) - 1</code>
+     * @return the registry slot of the robot at that position
+     */
+    public int slotAt(Model model, int index) {
+        // The count is read first, so that the array holding it is seen
+        int count = published.get(model.ordinal());
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Count: " + count);
+        }
+        return slots[model.ordinal()][index];
+    }
+}
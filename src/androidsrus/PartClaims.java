@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * An instance of class <code>PartClaims</code> records which parts of which
+ * old androids have been claimed by the threads building new robots, so that
+ * every part goes to exactly one robot even when several threads try to take
+ * it at the same time.
+ * <p>
+ * Each old android gets a byte holding one bit per part type, and four of
+ * them are packed into each int. A part is claimed by setting its bit with a
+ * compare and swap, so exactly one of the threads racing for a part succeeds,
+ * without any locks. Ints are kept in pages that never move once created, so
+ * adding pages for more androids never loses a claim made meanwhile.
+ * <p>
+ * A part can be taken by a new robot only while its slot is in the pool of
+ * its part type and its bit is clear. Bits are only set while more than one
+ * thread may get to a part, see {@link PartPool.Segment}, so parts given away
+ * otherwise, or before the yard was loaded or replayed, keep their bits clear
+ * and are simply no longer in any pool.
+ *
+ * @author Wellington Regis
+ */
+public class PartClaims {
+    private static final int SLOTS_PER_CELL_SHIFT = 2; // four androids per int
+    private static final int PAGE_SHIFT = 14; // cells per page, as a power of two
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int SLOTS_PER_PAGE = 1 << (PAGE_SHIFT + SLOTS_PER_CELL_SHIFT);
+
+    private volatile AtomicIntegerArray[] pages;
+
+    /**
+     * Constructor for the <code>PartClaims</code> class
+     *
+     * @param slots holds the amount of registry slots expected, which only
+     * sizes the claims up front
+     */
+    public PartClaims(int slots) {
+        this.pages = new AtomicIntegerArray[0];
+        ensureCapacity(slots);
+    }
+
+    /**
+     * Claims a part of an old android, unless another thread has already
+     * claimed it
+     *
+     * @param slot holds the registry slot of the old android
+     * @param part holds the type of the part
+     * @return true if the part was claimed by this call, false if it had
+     * already been claimed
+     */
+    public boolean claim(int slot, PartType part) {
+        AtomicIntegerArray page = pages[slot >>> (PAGE_SHIFT + SLOTS_PER_CELL_SHIFT)];
+        int cell = (slot >>> SLOTS_PER_CELL_SHIFT) & PAGE_MASK;
+        int bit = bitOf(slot, part);
+        while (true) {
+            int claimed = page.get(cell);
+            if ((claimed & bit) != 0) {
+                return false;
+            }
+            // Fails only if another part of one of the four androids sharing
+            // the int was claimed meanwhile, in which case it is tried again
+            if (page.compareAndSet(cell, claimed, claimed | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a part of an old android has been claimed
+     *
+     * @param slot holds the registry slot of the old android
+     * @param part holds the type of the part
+     * @return true if the part has been claimed
+     */
+    public boolean isClaimed(int slot, PartType part) {
+        AtomicIntegerArray[] pages = this.pages;
+        int page = slot >>> (PAGE_SHIFT + SLOTS_PER_CELL_SHIFT);
+        if (page >= pages.length) {
+            return false;
+        }
+        return (pages[page].get((slot >>> SLOTS_PER_CELL_SHIFT) & PAGE_MASK) & bitOf(slot, part)) != 0;
+    }
+
+    /**
+     * Makes sure there are claims for a given amount of registry slots. Pages
+     * already in use are kept as they are, so claims can be made while this
+     * method runs.
+     *
+     * @param slots holds the amount of slots needed
+     */
+    public synchronized void ensureCapacity(int slots) {
+        int needed = (int) (((long) slots + SLOTS_PER_PAGE - 1) / SLOTS_PER_PAGE);
+        if (needed > pages.length) {
+            AtomicIntegerArray[] grown = Arrays.copyOf(pages, needed);
+            for (int i = pages.length; i < needed; i++) {
+                grown[i] = new AtomicIntegerArray(1 << PAGE_SHIFT);
+            }
+            pages = grown;
+        }
+    }
+
+    /*
+     * Gets the bit of a part within the int holding the claims of an android
+     */
+    private static int bitOf(int slot, PartType part) {
+        return 1 << (((slot & ((1 << SLOTS_PER_CELL_SHIFT) - 1)) << 3) + part.ordinal());
+    }
+}
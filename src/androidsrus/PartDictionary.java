@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Class <code>PartDictionary</code> gives every distinct value of a part type 
+ * (e.g. "plasma" for power plants) a small code, so that robots can store
+ * one byte per part instead of a reference to a String. Codes are handed out
+ * in the order values are first seen and never change, and all robots share
+ * the same dictionary. Up to 256 values can be told apart per part type.
+ * <p>
+ * Looking up the code of a known value is safe from any thread. New values
+ * are added one at a time.
+ *
+ * @author Wellington Regis
+ */
+public final class PartDictionary {
+    /**
+     * Largest amount of distinct values per part type
+     */
+    public static final int MAX_CODES = 256;
+
+    private static final List<ConcurrentHashMap<String, Integer>> CODES = new ArrayList<>(PartType.COUNT);
+    private static final String[][] VALUES = new String[PartType.COUNT][MAX_CODES];
+    private static final int[] SIZES = new int[PartType.COUNT];
+
+    static {
+        for (int i = 0; i < PartType.COUNT; i++) {
+            CODES.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /*
+     * Constructor for class PartDictionary, which only has static methods
+     */
+    private PartDictionary() {
+    }
+
+    /**
+     * Gets the code of a part value, adding the value to the dictionary if it
+     * has not been seen before
+     *
+     * @param part holds the type of the part
+     * @param value holds the value of the part
+     * @return the code of the value, from 0 to <code>MAX_CODES - 1</code>
+     * @throws IllegalStateException if the part type already has 
+     * <code>MAX_CODES</code> values
+     */
+    public static int encode(PartType part, String value) {
+        Integer code = CODES.get(part.ordinal()).get(value);
+        return code != null ? code : add(part, value);
+    }
+
+    /**
+     * Gets the code of a part value without adding it to the dictionary
+     *
+     * @param part holds the type of the part
+     * @param value holds the value of the part
+     * @return the code of the value or -1 if the value has never been seen
+     */
+    public static int codeOf(PartType part, String value) {
+        Integer code = CODES.get(part.ordinal()).get(value);
+        return code != null ? code : -1;
+    }
+
+    /**
+     * Gets the amount of values of a part type, whose codes run from 0 to
+     * <code>size(part) - 1</code>
+     *
+     * @param part holds the type of the part
+     * @return the amount of values of the part type
+     */
+    public static synchronized int size(PartType part) {
+        return SIZES[part.ordinal()];
+    }
+
+    /**
+     * Gets the part value given a code
+     *
+     * @param part holds the type of the part
+     * @param code holds a code returned by {@link #encode(PartType, String)}
+     * @return the value of the part
+     */
+    public static String decode(PartType part, int code) {
+        return VALUES[part.ordinal()][code];
+    }
+
+    /*
+     * Adds a value under the next free code. The value is stored before its
+     * code is published, so anyone who gets hold of the code can decode it.
+     */
+    private static synchronized int add(PartType part, String value) {
+        Map<String, Integer> codes = CODES.get(part.ordinal());
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        int next = SIZES[part.ordinal()];
+        if (next == MAX_CODES) {
+            throw new IllegalStateException("More than " + MAX_CODES 
+                    + " different values of " + part.getName());
+        }
+        VALUES[part.ordinal()][next] = value;
+        SIZES[part.ordinal()] = next + 1;
+        codes.put(value, next);
+        return next;
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * An instance of class <code>PartPool</code> holds the registry slots of the
+ * old androids that still have a particular part available. Entries are kept
+ * in a plain int array so that a random entry can be picked and removed in
+ * constant time, no matter how many donors there are. A second array records
+ * where each slot sits in the first one, so that any entry can also be found
+ * and moved in constant time.
+ * <p>
+ * For parallel builds the pool can be split into segments covering disjoint
+ * ranges of the array. Every slot belongs to exactly one segment, so threads
+ * taking parts from different segments never touch the same entries. While
+ * split, the pool itself must not be used until it is joined again.
+ * <p>
+ * A thread whose segment has run out can claim parts from other segments 
+ * through a <code>PartClaims</code>, once their own threads have finished 
+ * with them, or before they have started. From then on every part taken from
+ * such a segment is claimed first, by whichever thread takes it, so each part
+ * is still taken only once. Parts taken by the own thread of a segment before
+ * that need no claims, since no other thread can get to them.
+ *
+ * @author Wellington Regis
+ */
+public class PartPool {
+    /**
+     * Returned by {@link Segment#claimExcluding} when the own thread of a 
+     * segment is still using it, so its parts may become available later
+     */
+    public static final int BUSY = -2;
+
+    private int[] slots;
+    private int[] positions; // position of each slot plus one, 0 if absent
+    private int size;
+
+    /**
+     * Constructor for the <code>PartPool</code> class
+     */
+    public PartPool() {
+        this(16);
+    }
+
+    /**
+     * Constructor for the <code>PartPool</code> class
+     *
+     * @param initialCapacity holds the amount of entries the pool can take
+     * before it has to grow
+     */
+    public PartPool(int initialCapacity) {
+        this.slots = new int[Math.max(initialCapacity, 1)];
+        this.positions = new int[Math.max(initialCapacity, 1)];
+        this.size = 0;
+    }
+
+    /*
+     * Constructor for class PartPool taking the slots it holds, e.g. when
+     * loading a snapshot. The array is used as it is, so it must not be
+     * changed afterwards.
+     */
+    PartPool(int[] entries, int slotCapacity) {
+        this.slots = entries.length == 0 ? new int[1] : entries;
+        this.positions = new int[Math.max(slotCapacity, 1)];
+        this.size = entries.length;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] < 0 || entries[i] >= positions.length || positions[entries[i]] != 0) {
+                throw new IllegalArgumentException("Invalid slot in pool: " + entries[i]);
+            }
+            positions[entries[i]] = i + 1;
+        }
+    }
+
+    /**
+     * Adds the slot of a robot whose part is available
+     *
+     * @param slot holds the registry slot of the donating robot
+     * @throws IllegalArgumentException if the slot is already in the pool
+     */
+    public void add(int slot) {
+        if (slot >= positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(slot + 1, positions.length * 2));
+        }
+        if (positions[slot] != 0) {
+            throw new IllegalArgumentException("Slot already in pool: " + slot);
+        }
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        slots[size] = slot;
+        positions[slot] = ++size;
+    }
+
+    /**
+     * Gets the slot stored at a particular position of the pool
+     *
+     * @param index holds a position from 0 to <code>size() - 1</code>
+     * @return the slot stored at that position
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return slots[index];
+    }
+
+    /**
+     * Checks whether the part of a particular robot is available
+     *
+     * @param slot holds the registry slot of the robot
+     * @return true if the slot is in the pool
+     */
+    public boolean contains(int slot) {
+        return slot >= 0 && slot < positions.length && positions[slot] != 0;
+    }
+
+    /**
+     * Removes the entry at a particular position by moving the last entry
+     * into its place. The order of the pool is not kept, which is fine since
+     * entries are always picked at random.
+     *
+     * @param index holds a position from 0 to <code>size() - 1</code>
+     * @return the slot that was removed
+     */
+    public int removeAt(int index) {
+        get(index); // checks bounds
+        return removeAt(index, size--);
+    }
+
+    /**
+     * Removes a particular slot from the pool
+     *
+     * @param slot holds the registry slot of the robot
+     * @return true if the slot was in the pool
+     */
+    public boolean remove(int slot) {
+        if (!contains(slot)) {
+            return false;
+        }
+        removeAt(positions[slot] - 1);
+        return true;
+    }
+
+    /**
+     * Picks a random entry and removes it from the pool, never picking one of
+     * the excluded slots
+     *
+     * @param r holds the random number generator to be used
+     * @param excluded holds the slots that must not be picked, without
+     * repetitions
+     * @param excludedCount holds the amount of slots in 'excluded'
+     * @return the slot that was picked
+     * @throws IllegalStateException if every slot left is excluded
+     */
+    public int takeRandomExcluding(SplittableRandom r, int[] excluded, int excludedCount) {
+        int slot = takeRandomExcluding(0, size, r, excluded, excludedCount);
+        size--;
+        return slot;
+    }
+
+    /**
+     * Splits the pool into segments of (nearly) equal size that can be used
+     * by different threads at the same time
+     *
+     * @param count holds the amount of segments
+     * @return the segments, in the order they cover the pool
+     */
+    public Segment[] split(int count) {
+        Segment[] segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            int start = (int) ((long) size * i / count);
+            int end = (int) ((long) size * (i + 1) / count);
+            segments[i] = new Segment(start, end - start);
+        }
+        return segments;
+    }
+
+    /**
+     * Joins segments back into the pool once all threads using them are 
+     * done, moving the entries left in each segment next to each other
+     *
+     * @param segments holds the segments returned by {@link #split(int)}
+     */
+    public void join(Segment[] segments) {
+        join(segments, null, null);
+    }
+
+    /**
+     * Joins segments back into the pool once all threads using them are 
+     * done, moving the entries left in each segment next to each other and
+     * dropping the ones other threads claimed
+     *
+     * @param segments holds the segments returned by {@link #split(int)}
+     * @param claims holds the claims made while the pool was split, or null
+     * if no parts were claimed
+     * @param part holds the type of part held by the pool
+     */
+    public void join(Segment[] segments, PartClaims claims, PartType part) {
+        int end = 0;
+        for (Segment segment : segments) {
+            // Only segments other threads claimed from need to be checked
+            boolean check = claims != null && segment.claimedFrom;
+            for (int i = segment.start; i < segment.start + segment.size; i++) {
+                if (check && claims.isClaimed(slots[i], part)) {
+                    positions[slots[i]] = 0;
+                    continue;
+                }
+                slots[end] = slots[i];
+                positions[slots[end]] = ++end;
+            }
+        }
+        size = end;
+    }
+
+    /**
+     * Gets the amount of available parts
+     *
+     * @return the amount of available parts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether there are no available parts left
+     *
+     * @return true if the pool is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /*
+     * Picks a random entry among positions start to end - 1, skipping the
+     * excluded slots found in that range, and removes it by moving the entry
+     * at end - 1 into its place. Excluded slots are first moved to the end of
+     * the range, so that a single draw over the rest of the range is enough.
+     * The caller has to shrink its range by one afterwards.
+     */
+    private int takeRandomExcluding(int start, int end, SplittableRandom r, int[] excluded, int excludedCount) {
+        int candidates = end;
+        for (int i = 0; i < excludedCount; i++) {
+            int position = contains(excluded[i]) ? positions[excluded[i]] - 1 : -1;
+            if (position >= start && position < end) {
+                swap(position, --candidates);
+            }
+        }
+        if (candidates == start) {
+            throw new IllegalStateException("No parts available in pool");
+        }
+        return removeAt(start + r.nextInt(candidates - start), end);
+    }
+
+    /*
+     * Checks whether a slot is one of the first 'count' slots of an array
+     */
+    private static boolean isExcluded(int slot, int[] excluded, int count) {
+        for (int i = 0; i < count; i++) {
+            if (excluded[i] == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Removes the entry at a position by moving the entry at end - 1 into its
+     * place. The caller has to shrink its range by one afterwards.
+     */
+    private int removeAt(int index, int end) {
+        int slot = slots[index];
+        swap(index, end - 1);
+        positions[slot] = 0;
+        return slot;
+    }
+
+    /*
+     * Swaps two entries, keeping their recorded positions up to date
+     */
+    private void swap(int i, int j) {
+        int a = slots[i];
+        int b = slots[j];
+        slots[i] = b;
+        slots[j] = a;
+        positions[a] = j + 1;
+        positions[b] = i + 1;
+    }
+
+    /**
+     * A <code>Segment</code> is a part of the pool that can be used by one
+     * thread while other threads use the other segments
+     */
+    public final class Segment {
+        private static final int NEW = 0; // not used by any thread yet
+        private static final int OWNED = 1; // used by its own thread only
+        private static final int SHARED = 2; // parts are claimed before taken
+
+        private final int start;
+        private int size;
+        private boolean claiming; // whether the own thread claims parts
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private volatile boolean claimedFrom;
+
+        /*
+         * Constructor for class Segment
+         */
+        private Segment(int start, int size) {
+            this.start = start;
+            this.size = size;
+        }
+
+        /**
+         * Starts using this segment as its own thread. Until it is released,
+         * parts are taken without being claimed, unless other threads got to
+         * the segment first.
+         */
+        public void own() {
+            claiming = !state.compareAndSet(NEW, OWNED);
+        }
+
+        /**
+         * Lets other threads claim parts from this segment, e.g. once its own
+         * thread is done with it. The own thread may keep taking parts, which
+         * are then claimed first.
+         */
+        public void release() {
+            claiming = true;
+            state.set(SHARED); // makes the size visible to other threads
+        }
+
+        /**
+         * Picks a random entry of this segment and removes it as its own 
+         * thread, never picking one of the excluded slots or one other 
+         * threads have claimed
+         *
+         * @param claims holds the claims of the parts of every old android
+         * @param part holds the type of part held by the pool
+         * @param r holds the random number generator to be used
+         * @param excluded holds the slots that must not be picked, without
+         * repetitions
+         * @param excludedCount holds the amount of slots in 'excluded'
+         * @return the slot that was picked, or -1 if every slot left in this
+         * segment is excluded or claimed
+         */
+        public int take(PartClaims claims, PartType part, SplittableRandom r, int[] excluded, int excludedCount) {
+            while (size > 0) {
+                int slot;
+                try {
+                    slot = takeRandomExcluding(r, excluded, excludedCount);
+                } catch (IllegalStateException ex) {
+                    return -1;
+                }
+                // A part some other thread claimed is gone from the segment
+                // now, so another one is drawn
+                if (!claiming || claims.claim(slot, part)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Claims a random part of this segment for a thread using another 
+         * segment, never claiming one of the excluded slots. Entries are not
+         * moved, so the own thread of the segment may keep taking parts at 
+         * the same time.
+         *
+         * @param claims holds the claims of the parts of every old android
+         * @param part holds the type of part held by the pool
+         * @param r holds the random number generator to be used
+         * @param excluded holds the slots that must not be claimed
+         * @param excludedCount holds the amount of slots in 'excluded'
+         * @return the slot that was claimed, -1 if no part could be claimed
+         * or {@link PartPool#BUSY} if the own thread has not released the 
+         * segment yet
+         */
+        public int claimExcluding(PartClaims claims, PartType part, SplittableRandom r, int[] excluded, int excludedCount) {
+            if (state.get() == NEW) {
+                state.compareAndSet(NEW, SHARED);
+            }
+            if (state.get() == OWNED) {
+                return BUSY;
+            }
+            // The size read after the state is at most the size the segment
+            // had when it was shared, and the own thread only ever moves 
+            // entries within that range afterwards, so any slot read is one
+            // taken with a claim or still in the segment
+            int length = size;
+            int offset = length == 0 ? 0 : r.nextInt(length);
+            for (int i = 0; i < length; i++) {
+                int slot = slots[start + (offset + i) % length];
+                if (!isExcluded(slot, excluded, excludedCount) && claims.claim(slot, part)) {
+                    claimedFrom = true;
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Picks a random entry of this segment and removes it, never picking
+         * one of the excluded slots
+         *
+         * @param r holds the random number generator to be used
+         * @param excluded holds the slots that must not be picked, without
+         * repetitions
+         * @param excludedCount holds the amount of slots in 'excluded'
+         * @return the slot that was picked
+         * @throws IllegalStateException if every slot left in this segment is
+         * excluded
+         */
+        public int takeRandomExcluding(SplittableRandom r, int[] excluded, int excludedCount) {
+            int slot = PartPool.this.takeRandomExcluding(start, start + size, r, excluded, excludedCount);
+            size--;
+            return slot;
+        }
+
+        /**
+         * Gets the amount of available parts in this segment
+         *
+         * @return the amount of available parts in this segment
+         */
+        public int size() {
+            return size;
+        }
+    }
+}
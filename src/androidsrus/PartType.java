@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+/**
+ * The types of parts a robot is made of. The order of the constants is the
+ * order in which parts are picked when building a new robot.
+ *
+ * @author Wellington Regis
+ */
+public enum PartType {
+    BRAIN("brain", false),
+    MOBILITY("mobility", false),
+    VISION("vision", true),
+    ARMS("arms", true),
+    MEDIA_CENTER("mediaCenter", true),
+    POWER_PLANT("powerPlant", true);
+
+    /**
+     * Amount of part types, which is also the amount of parts in a robot
+     */
+    public static final int COUNT = values().length;
+
+    private final String name;
+    private final boolean checksDonorLimit;
+
+    /*
+     * Constructor for enum PartType
+     */
+    private PartType(String name, boolean checksDonorLimit) {
+        this.name = name;
+        this.checksDonorLimit = checksDonorLimit;
+    }
+
+    /**
+     * Gets the name of the part as used in messages (e.g. "mediaCenter")
+     *
+     * @return the name of the part
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the pool of available parts of this type
+     *
+     * @param s holds an instance of the <code>Setup</code> class
+     * @return the pool of available parts of this type
+     */
+    public PartPool getPool(Setup s) {
+        return s.getAvailable(this);
+    }
+
+    /**
+     * Checks whether picking this part has to respect the rule that no robot
+     * from the new line has more than two parts from the same old android.
+     * The first two parts picked can never break the rule, so they skip the
+     * check.
+     *
+     * @return true if the donors of previously picked parts must be checked
+     */
+    public boolean checksDonorLimit() {
+        return checksDonorLimit;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+/**
+ * An instance of class <code>ProvenanceStore</code> holds info on the origin
+ * and destination of robot parts.
+ * <p>
+ * For a robot from the new line, the origin of a part is the serial number of
+ * the old android that donated it. For an old android, the destination of a
+ * part is the serial number of the new robot that received it. Both are kept
+ * in flat int columns with one cell per robot slot (see <code>RobotRegistry
+ * </code>) and part type, so recording a part never allocates. Columns are
+ * kept on or off the Java heap depending on the <code>Storage</code> chosen. A cell holding
+ * 0 means there is no origin or destination for that part.
+ * <p>
+ * Parts are recorded in the order origins, robot, destinations: the origins
+ * of a new robot are stored before it is added to the registry, and the 
+ * destinations pointing at it only once it has been added. Other threads 
+ * reading a robot they found in the registry therefore always see its 
+ * origins, and {@link #getRecipientSlotAt(int, PartType)} only reports a 
+ * destination once its robot can be read.
+ *
+ * @author Wellington Regis
+ */
+public class ProvenanceStore {
+    /**
+     * Value returned when a part has no origin or destination
+     */
+    public static final int NONE = 0;
+
+    private final RobotRegistry robots;
+    private volatile IntColumn origin;
+    private volatile IntColumn destination;
+
+    /**
+     * Constructor for the <code>ProvenanceStore</code> class
+     *
+     * @param robots holds the registry whose slots are used to index the 
+     * store
+     * @param expectedRobots holds the amount of robots the store can take
+     * before it has to grow
+     */
+    public ProvenanceStore(RobotRegistry robots, int expectedRobots) {
+        this(robots, expectedRobots, Storage.HEAP);
+    }
+
+    /**
+     * Constructor for the <code>ProvenanceStore</code> class
+     *
+     * @param robots holds the registry whose slots are used to index the 
+     * store
+     * @param expectedRobots holds the amount of robots the store can take
+     * before it has to grow
+     * @param storage holds where the columns of the store are kept
+     */
+    public ProvenanceStore(RobotRegistry robots, int expectedRobots, Storage storage) {
+        this.robots = robots;
+        this.origin = storage.newIntColumn(Math.max(expectedRobots, 1) * PartType.COUNT);
+        this.destination = storage.newIntColumn(Math.max(expectedRobots, 1) * PartType.COUNT);
+    }
+
+    /*
+     * Constructor for class ProvenanceStore taking columns that already hold
+     * the origin and destination of parts, e.g. when loading a snapshot
+     */
+    ProvenanceStore(RobotRegistry robots, IntColumn origin, IntColumn destination) {
+        this.robots = robots;
+        this.origin = origin;
+        this.destination = destination;
+    }
+
+    /**
+     * Stores the serial number of the old android a part came from
+     *
+     * @param slot holds the slot of the robot receiving the part
+     * @param part holds the type of the part
+     * @param donorSerialNumber holds the serial number of the donating robot
+     */
+    public void setOriginAt(int slot, PartType part, int donorSerialNumber) {
+        int cell = cell(slot, part);
+        if (cell >= origin.length()) {
+            ensureCapacity(slot + 1);
+        }
+        origin.set(cell, donorSerialNumber);
+    }
+
+    /**
+     * Stores the serial number of the new robot a part went to
+     *
+     * @param slot holds the slot of the robot donating the part
+     * @param part holds the type of the part
+     * @param recipientSerialNumber holds the serial number of the robot 
+     * receiving the part
+     */
+    public void setDestinationAt(int slot, PartType part, int recipientSerialNumber) {
+        int cell = cell(slot, part);
+        if (cell >= destination.length()) {
+            ensureCapacity(slot + 1);
+        }
+        destination.set(cell, recipientSerialNumber);
+    }
+
+    /**
+     * Gets the serial number of the old android a part came from
+     *
+     * @param slot holds the slot of the robot that received the part
+     * @param part holds the type of the part
+     * @return the serial number of the donating robot or <code>NONE</code>
+     */
+    public int getOriginAt(int slot, PartType part) {
+        int cell = cell(slot, part);
+        return cell < origin.length() ? origin.get(cell) : NONE;
+    }
+
+    /**
+     * Gets the serial number of the new robot a part went to
+     *
+     * @param slot holds the slot of the robot that donated the part
+     * @param part holds the type of the part
+     * @return the serial number of the receiving robot or <code>NONE</code>
+     */
+    public int getDestinationAt(int slot, PartType part) {
+        int cell = cell(slot, part);
+        return cell < destination.length() ? destination.get(cell) : NONE;
+    }
+
+    /**
+     * Gets the slot of the new robot a part went to, as long as that robot 
+     * can already be read from the registry
+     *
+     * @param slot holds the slot of the robot that donated the part
+     * @param part holds the type of the part
+     * @return the slot of the receiving robot or -1 if the part has not been
+     * used yet
+     */
+    public int getRecipientSlotAt(int slot, PartType part) {
+        int recipient = getDestinationAt(slot, part);
+        return recipient == NONE ? -1 : robots.slotOf(recipient);
+    }
+
+    /**
+     * Gets the serial number of the old android a part came from
+     *
+     * @param serialNumber holds the serial number of the robot that received 
+     * the part
+     * @param part holds the type of the part
+     * @return the serial number of the donating robot or <code>NONE</code> if
+     * there is no such robot or part origin
+     */
+    public int getOrigin(int serialNumber, PartType part) {
+        int slot = robots.slotOf(serialNumber);
+        return slot < 0 ? NONE : getOriginAt(slot, part);
+    }
+
+    /**
+     * Gets the serial number of the new robot a part went to
+     *
+     * @param serialNumber holds the serial number of the robot that donated
+     * the part
+     * @param part holds the type of the part
+     * @return the serial number of the receiving robot or <code>NONE</code> if
+     * there is no such robot or the part has not been used yet
+     */
+    public int getDestination(int serialNumber, PartType part) {
+        int slot = robots.slotOf(serialNumber);
+        return slot < 0 ? NONE : getDestinationAt(slot, part);
+    }
+
+    /*
+     * Works out the array cell holding a part of the robot in a given slot
+     */
+    private static int cell(int slot, PartType part) {
+        return slot * PartType.COUNT + part.ordinal();
+    }
+
+    /**
+     * Grows the store so that it has cells for a given amount of slots. 
+     * Threads may only record parts at the same time if the store was grown
+     * beforehand, as growing replaces the columns. Reading is safe at any 
+     * time.
+     * 
+     * @param slots holds the amount of slots needed
+     */
+    public synchronized void ensureCapacity(int slots) {
+        int needed = slots * PartType.COUNT;
+        if (needed > origin.length()) {
+            int length = Math.max(needed, origin.length() * 2);
+            origin = origin.copyOf(length);
+            destination = destination.copyOf(length);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+
+/**
+ * An instance of class <code>RandomStreams</code> derives all the random 
+ * number generators of a run from a single seed. There is one independent 
+ * stream for the generation of old androids, one for serial numbers and one
+ * for picking parts when building new robots. Generators for chunks of work
+ * are split from these streams in a fixed order, so two runs with the same 
+ * seed give exactly the same robots whether or not threads are used.
+ *
+ * @author Wellington Regis
+ */
+public class RandomStreams {
+    private final long seed;
+    private final SplittableRandom donors;
+    private final SplittableRandom serialNumbers;
+    private final SplittableRandom parts;
+
+    /**
+     * Constructor for the <code>RandomStreams</code> class
+     *
+     * @param seed holds the seed all streams are derived from
+     */
+    public RandomStreams(long seed) {
+        SplittableRandom root = new SplittableRandom(seed);
+        this.seed = seed;
+        this.donors = root.split();
+        this.serialNumbers = root.split();
+        this.parts = root.split();
+    }
+
+    /**
+     * Gets the seed all streams are derived from
+     *
+     * @return the seed of the run
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the stream used to generate old androids
+     *
+     * @return the stream used to generate old androids
+     */
+    public SplittableRandom getDonors() {
+        return donors;
+    }
+
+    /**
+     * Gets the stream used to hand out serial numbers
+     *
+     * @return the stream used to hand out serial numbers
+     */
+    public SplittableRandom getSerialNumbers() {
+        return serialNumbers;
+    }
+
+    /**
+     * Gets the stream used to pick models and parts of new robots
+     *
+     * @return the stream used to pick models and parts of new robots
+     */
+    public SplittableRandom getParts() {
+        return parts;
+    }
+}
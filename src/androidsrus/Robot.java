@@ -20,23 +20,25 @@ package androidsrus;
  * An object of class <code>Robot</code> holds the robot's model, serial number,
  * its brain parts, its mobility parts, its vision parts, its arms parts, its
  * media center parts and its power plant parts
+ * <p>
+ * Parts and model are packed into a single long, one byte each: the code of
+ * every part in the <code>PartDictionary</code> at the position given by the 
+ * ordinal of its <code>PartType</code>, followed by the ordinal of the model.
+ * This lets the <code>RobotRegistry</code> keep robots as plain numbers and 
+ * hand out robots as lightweight views when asked for one.
  * 
  * @author Wellington Regis
  */
 public class Robot {
-    private final String model;
+    private static final int MODEL_SHIFT = PartType.COUNT * 8;
+
     private final int serialNumber;
-    private final String brain;
-    private final String mobility;
-    private final String vision;
-    private final String arms;
-    private final String mediaCenter;
-    private final String powerPlant;
+    private final long codes;
 
     /**
      * Constructor for the <code>Robot</code> class
      * 
-     * @param model holds a String with the robot's model
+     * @param model holds the robot's model
      * @param serialNumber holds an integer with the robot's serial number
      * @param brain holds a String with the robot's brain parts type
      * @param mobility holds a String with the robot's mobility parts type
@@ -45,24 +47,71 @@ public class Robot {
      * @param mediaCenter holds a String with the robot's media center parts type
      * @param powerPlant holds a String with the robot's power plant parts type
      */
-    public Robot(String model, int serialNumber, String brain, String mobility, String vision, String arms, String mediaCenter, String powerPlant) {
-        this.model = model;
+    public Robot(Model model, int serialNumber, String brain, String mobility, String vision, String arms, String mediaCenter, String powerPlant) {
+        this(serialNumber, withModel(0L, model)
+                | code(PartType.BRAIN, brain)
+                | code(PartType.MOBILITY, mobility)
+                | code(PartType.VISION, vision)
+                | code(PartType.ARMS, arms)
+                | code(PartType.MEDIA_CENTER, mediaCenter)
+                | code(PartType.POWER_PLANT, powerPlant));
+    }
+
+    /**
+     * Constructor for the <code>Robot</code> class
+     * 
+     * @param model holds the robot's model
+     * @param serialNumber holds an integer with the robot's serial number
+     * @param parts holds an array with the robot's parts types, indexed by 
+     * the ordinal of their <code>PartType</code>
+     */
+    public Robot(Model model, int serialNumber, String[] parts) {
+        this(model, serialNumber, parts[PartType.BRAIN.ordinal()], 
+                parts[PartType.MOBILITY.ordinal()], 
+                parts[PartType.VISION.ordinal()], 
+                parts[PartType.ARMS.ordinal()], 
+                parts[PartType.MEDIA_CENTER.ordinal()], 
+                parts[PartType.POWER_PLANT.ordinal()]);
+    }
+
+    /**
+     * Constructor for the <code>Robot</code> class taking parts and model
+     * already packed
+     * 
+     * @param serialNumber holds an integer with the robot's serial number
+     * @param codes holds the robot's parts and model as packed by 
+     * {@link #getCodes()}
+     */
+    public Robot(int serialNumber, long codes) {
         this.serialNumber = serialNumber;
-        this.brain = brain;
-        this.mobility = mobility;
-        this.vision = vision;
-        this.arms = arms;
-        this.mediaCenter = mediaCenter;
-        this.powerPlant = powerPlant;
+        this.codes = codes;
+    }
+
+    /**
+     * Gets the robot's parts and model packed into a long
+     * 
+     * @return the robot's parts and model packed into a long
+     */
+    public long getCodes() {
+        return codes;
     }
 
     /**
      * Gets the robot's model
      * 
-     * @return a String with the robot's model 
+     * @return the robot's model 
+     */
+    public Model getModel() {
+        return modelOf(codes);
+    }
+
+    /**
+     * Gets the line the robot belongs to
+     * 
+     * @return the line the robot belongs to
      */
-    public String getModel() {
-        return model;
+    public Line getLine() {
+        return modelOf(codes).getLine();
     }
 
     /**
@@ -74,13 +123,23 @@ public class Robot {
         return serialNumber;
     }
 
+    /**
+     * Gets the dictionary code of one of the robot's parts
+     * 
+     * @param part holds the type of the part
+     * @return the code of the part in the <code>PartDictionary</code>
+     */
+    public int getPartCode(PartType part) {
+        return partCodeOf(codes, part);
+    }
+
     /**
      * Gets the robot's brain type
      * 
      * @return a String with the robot's brain type
      */
     public String getBrain() {
-        return brain;
+        return getPart(PartType.BRAIN);
     }
 
     /**
@@ -89,7 +148,7 @@ public class Robot {
      * @return a String with the robot's mobility type
      */
     public String getMobility() {
-        return mobility;
+        return getPart(PartType.MOBILITY);
     }
 
     /**
@@ -98,7 +157,7 @@ public class Robot {
      * @return a String with the robot's vision type
      */
     public String getVision() {
-        return vision;
+        return getPart(PartType.VISION);
     }
 
     /**
@@ -107,7 +166,7 @@ public class Robot {
      * @return a String with the robot's arms type
      */
     public String getArms() {
-        return arms;
+        return getPart(PartType.ARMS);
     }
 
     /**
@@ -116,7 +175,7 @@ public class Robot {
      * @return a String with the robot's media center type
      */
     public String getMediaCenter() {
-        return mediaCenter;
+        return getPart(PartType.MEDIA_CENTER);
     }
 
     /**
@@ -125,6 +184,92 @@ public class Robot {
      * @return a String with the robot's power plant type
      */
     public String getPowerPlant() {
-        return powerPlant;
-    } 
+        return getPart(PartType.POWER_PLANT);
+    }
+
+    /**
+     * Two robots are equal if they have the same serial number, model and
+     * parts, since the registry hands out a new view each time a robot is
+     * looked up
+     * 
+     * @param other holds the object to be compared with
+     * @return true if the other object is an equal robot
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Robot)) {
+            return false;
+        }
+        Robot robot = (Robot) other;
+        return serialNumber == robot.serialNumber && codes == robot.codes;
+    }
+
+    /**
+     * Gets a hash code consistent with {@link #equals(Object)}
+     * 
+     * @return a hash code for the robot
+     */
+    @Override
+    public int hashCode() {
+        return serialNumber * 31 + Long.hashCode(codes);
+    }
+
+    /**
+     * Gets the model out of packed parts and model
+     * 
+     * @param codes holds parts and model as packed by {@link #getCodes()}
+     * @return the model
+     */
+    public static Model modelOf(long codes) {
+        return Model.values()[(int) (codes >>> MODEL_SHIFT) & 0xFF];
+    }
+
+    /**
+     * Gets the dictionary code of a part out of packed parts and model
+     * 
+     * @param codes holds parts and model as packed by {@link #getCodes()}
+     * @param part holds the type of the part
+     * @return the code of the part in the <code>PartDictionary</code>
+     */
+    public static int partCodeOf(long codes, PartType part) {
+        return (int) (codes >>> (part.ordinal() * 8)) & 0xFF;
+    }
+
+    /**
+     * Replaces the model in packed parts and model
+     * 
+     * @param codes holds parts and model as packed by {@link #getCodes()}
+     * @param model holds the new model
+     * @return the packed parts and model holding the new model
+     */
+    public static long withModel(long codes, Model model) {
+        return (codes & ~(0xFFL << MODEL_SHIFT)) | ((long) model.ordinal() << MODEL_SHIFT);
+    }
+
+    /**
+     * Replaces the code of a part in packed parts and model
+     * 
+     * @param codes holds parts and model as packed by {@link #getCodes()}
+     * @param part holds the type of the part
+     * @param code holds the new code of the part
+     * @return the packed parts and model holding the new part code
+     */
+    public static long withPartCode(long codes, PartType part, int code) {
+        int shift = part.ordinal() * 8;
+        return (codes & ~(0xFFL << shift)) | ((long) code << shift);
+    }
+
+    /*
+     * Decodes one of the parts
+     */
+    private String getPart(PartType part) {
+        return PartDictionary.decode(part, partCodeOf(codes, part));
+    }
+
+    /*
+     * Encodes a part value into its position within the packed long
+     */
+    private static long code(PartType part, String value) {
+        return (long) PartDictionary.encode(part, value) << (part.ordinal() * 8);
+    }
 }
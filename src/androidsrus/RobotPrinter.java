@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * An instance of class <code>RobotPrinter</code> prints the details of 
+ * robots, in the same layout as <code>Utilities.robotDetailsPrinter</code>,
+ * to a <code>ByteSink</code>. Robots are read from the registry by slot and 
+ * the donors of their parts are looked up by serial number without creating
+ * any <code>Robot</code>, so printing thousands of robots allocates nothing
+ * and costs a handful of writes instead of one per robot.
+ * <p>
+ * Output is only guaranteed to reach the sink's channel once the printer is
+ * flushed, which should be done before anything else is printed.
+ *
+ * @author Wellington Regis
+ */
+public class RobotPrinter implements Flushable {
+    private static final PartType[] PARTS = PartType.values();
+    private static final byte[][] LABELS = new byte[PartType.COUNT][]; // indexed by part ordinal
+    private static final byte[][] MODELS = new byte[Model.COUNT][]; // indexed by model ordinal
+    private static final byte[] MODEL = bytes("\nModel: ");
+    private static final byte[] SERIAL_NUMBER = bytes("\nSerial Number: ");
+    private static final byte[] GHZ = bytes(" GHz");
+    private static final byte[] OPEN_ORIGIN = bytes(" (");
+    private static final byte[] ORIGIN_SERIAL_NUMBER = bytes(": serialNumber: ");
+
+    static {
+        String[] labels = {"Brain", "Mobility", "Vision", "Arms", "Media Center", "Power Plant"};
+        for (PartType part : PARTS) {
+            LABELS[part.ordinal()] = bytes("\n" + labels[part.ordinal()] + ": ");
+        }
+        for (Model model : Model.values()) {
+            MODELS[model.ordinal()] = bytes(model.getName());
+        }
+    }
+
+    private final RobotRegistry robots;
+    private final ProvenanceStore provenance;
+    private final ByteSink sink;
+    private final byte[][][] values; // part values as bytes, by part ordinal and code
+
+    /**
+     * Constructor for the <code>RobotPrinter</code> class printing to 
+     * <code>System.out</code>
+     *
+     * @param s holds the setup robots are printed from
+     */
+    public RobotPrinter(Setup s) {
+        this(s.getRobotViaSerial(), s.getProvenance(), ByteSink.of(System.out));
+    }
+
+    /**
+     * Constructor for the <code>RobotPrinter</code> class
+     *
+     * @param robots holds the registry robots are printed from
+     * @param provenance holds the store with the origin of robot parts
+     * @param sink holds the sink robots are printed to
+     */
+    public RobotPrinter(RobotRegistry robots, ProvenanceStore provenance, ByteSink sink) {
+        this.robots = robots;
+        this.provenance = provenance;
+        this.sink = sink;
+        this.values = new byte[PartType.COUNT][0][];
+    }
+
+    /**
+     * Prints a robot, along with the origin of its parts if it belongs to the
+     * new line
+     *
+     * @param slot holds the registry slot of the robot
+     * @throws IOException if the sink could not write
+     */
+    public void print(int slot) throws IOException {
+        writeDetails(slot, Robot.modelOf(robots.getCodesAt(slot)).getLine() == Line.NEW);
+    }
+
+    /**
+     * Prints a robot on its own, as done for old androids
+     *
+     * @param slot holds the registry slot of the robot
+     * @throws IOException if the sink could not write
+     */
+    public void printDetails(int slot) throws IOException {
+        writeDetails(slot, false);
+    }
+
+    /**
+     * Prints a robot along with the model and serial number of the old 
+     * android each of its parts came from, as done for new robots
+     *
+     * @param slot holds the registry slot of the robot
+     * @throws IOException if the sink could not write
+     */
+    public void printDetailsWithOrigins(int slot) throws IOException {
+        writeDetails(slot, true);
+    }
+
+    /**
+     * Checks whether this printer prints robots from a particular registry 
+     * and provenance store
+     *
+     * @param robots holds the registry of robots
+     * @param provenance holds the store with the origin of robot parts
+     * @return true if robots are printed from both of them
+     */
+    public boolean prints(RobotRegistry robots, ProvenanceStore provenance) {
+        return this.robots == robots && this.provenance == provenance;
+    }
+
+    /**
+     * Writes out everything printed so far
+     *
+     * @throws IOException if the sink could not write
+     */
+    @Override
+    public void flush() throws IOException {
+        sink.flush();
+    }
+
+    /*
+     * Writes the details of the robot in a slot, line after line, followed by
+     * a line break
+     */
+    private void writeDetails(int slot, boolean withOrigins) throws IOException {
+        long codes = robots.getCodesAt(slot);
+        sink.write(MODEL).write(MODELS[Robot.modelOf(codes).ordinal()]);
+        sink.write(SERIAL_NUMBER).write(robots.getSerialNumberAt(slot));
+        for (PartType part : PARTS) {
+            sink.write(LABELS[part.ordinal()]).write(valueOf(part, Robot.partCodeOf(codes, part)));
+            if (part == PartType.BRAIN) {
+                sink.write(GHZ);
+            }
+            if (withOrigins) {
+                int origin = provenance.getOriginAt(slot, part);
+                long originCodes = robots.getCodesAt(robots.slotOf(origin));
+                sink.write(OPEN_ORIGIN).write(MODELS[Robot.modelOf(originCodes).ordinal()]);
+                sink.write(ORIGIN_SERIAL_NUMBER).write(origin).write((byte) ')');
+            }
+        }
+        sink.newLine();
+    }
+
+    /*
+     * Gets the bytes of a part value. Values are turned into bytes the first
+     * time they are printed, as the dictionary may have grown since the 
+     * printer was made.
+     */
+    private byte[] valueOf(PartType part, int code) {
+        byte[][] partValues = values[part.ordinal()];
+        if (code >= partValues.length) {
+            int size = PartDictionary.size(part);
+            int known = partValues.length;
+            partValues = Arrays.copyOf(partValues, size);
+            for (int c = known; c < size; c++) {
+                partValues[c] = bytes(PartDictionary.decode(part, c));
+            }
+            values[part.ordinal()] = partValues;
+        }
+        return partValues[code];
+    }
+
+    /*
+     * Gets the bytes of a piece of text
+     */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+
+/**
+ * An instance of class <code>RobotQuery</code> holds the conditions a robot
+ * has to meet to be found by an <code>AttributeIndex</code> search. All 
+ * conditions must be met, e.g. a query for robots whose power plant is 
+ * "plasma" and whose vision is "night vision".
+ *
+ * @author Wellington Regis
+ */
+public class RobotQuery {
+    private final List<Attribute> attributes;
+    private final List<String> values;
+    private final EnumSet<PartType> unused;
+
+    /**
+     * Constructor for the <code>RobotQuery</code> class. A query without 
+     * conditions finds all robots.
+     */
+    public RobotQuery() {
+        this.attributes = new ArrayList<>();
+        this.values = new ArrayList<>();
+        this.unused = EnumSet.noneOf(PartType.class);
+    }
+
+    /**
+     * Adds the condition that an attribute has a particular value
+     *
+     * @param attribute holds the attribute
+     * @param value holds the value the attribute must have
+     * @return this query
+     */
+    public RobotQuery where(Attribute attribute, String value) {
+        attributes.add(attribute);
+        values.add(value);
+        return this;
+    }
+
+    /**
+     * Adds the condition that a robot is an old android whose part of a 
+     * particular type has not been used yet
+     *
+     * @param part holds the type of part
+     * @return this query
+     */
+    public RobotQuery unused(PartType part) {
+        unused.add(part);
+        return this;
+    }
+
+    /**
+     * Gets the amount of attribute conditions
+     *
+     * @return the amount of attribute conditions
+     */
+    public int size() {
+        return attributes.size();
+    }
+
+    /**
+     * Gets the attribute of one of the attribute conditions
+     *
+     * @param index holds a position from 0 to <code>size() - 1</code>
+     * @return the attribute of the condition
+     */
+    public Attribute getAttribute(int index) {
+        return attributes.get(index);
+    }
+
+    /**
+     * Gets the value of one of the attribute conditions
+     *
+     * @param index holds a position from 0 to <code>size() - 1</code>
+     * @return the value of the condition
+     */
+    public String getValue(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Gets the part types that must not have been used yet
+     *
+     * @return the part types that must not have been used yet
+     */
+    public Set<PartType> getUnused() {
+        return Collections.unmodifiableSet(unused);
+    }
+
+    /**
+     * Describes the query, e.g. <code>powerPlant = plasma AND unused arms
+     * </code>
+     *
+     * @return a String describing the query
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < attributes.size(); i++) {
+            if (sb.length() > 0) {
+                sb.append(" AND ");
+            }
+            sb.append(attributes.get(i).getName()).append(" = ").append(values.get(i));
+        }
+        for (PartType part : unused) {
+            if (sb.length() > 0) {
+                sb.append(" AND ");
+            }
+            sb.append("unused ").append(part.getName());
+        }
+        return sb.length() == 0 ? "all robots" : sb.toString();
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+
+/**
+ * An instance of class <code>RobotRegistry</code> holds all existing robots and
+ * allows them to be quickly found through their serial numbers.
+ * <p>
+ * Every robot added gets a slot, which is simply its position in the order
+ * robots were added (0, 1, 2...). Robots are not kept as objects: their 
+ * serial numbers and packed parts (see {@link Robot#getCodes()}) are stored 
+ * in a pair of primitive columns indexed by slot, about 12 bytes per robot, 
+ * and a <code>Robot</code> view is created whenever one is asked for. Serial
+ * numbers are mapped to slots through an open addressing
+ * hash table made of two int columns, so lookups never box serial numbers and
+ * no entry objects are allocated per robot. Columns are kept on or off the
+ * Java heap depending on the <code>Storage</code> chosen. A <code>ModelIndex</code> is kept
+ * up to date as robots are added.
+ * <p>
+ * Robots can be looked up while others are being added. Adding is done under
+ * the registry's lock, one robot or batch at a time, while lookups take no 
+ * lock at all. Robots are only ever appended and the size is published once
+ * a robot or a whole batch is in place, so the robots in the slots below a
+ * size read at any time form a consistent snapshot of the registry: every 
+ * one of them can be read in full, and lookups never find a robot that is 
+ * still being added. Columns and hash tables are replaced, never changed in
+ * place, when they grow.
+ *
+ * @author Wellington Regis
+ */
+public class RobotRegistry implements Iterable<Robot> {
+    private static final int EMPTY = 0; // no valid serial number is 0
+    private static final float MAX_LOAD = 0.6f;
+
+    private final Storage storage;
+    private volatile Table table;
+    private volatile IntColumn serialNumbers; // indexed by slot
+    private volatile LongColumn codes; // indexed by slot
+    private int added; // robots in the columns, only used by the adding thread
+    private volatile int size; // robots that can be seen, published after 'added'
+    private final ModelIndex models;
+
+    /**
+     * Constructor for the <code>RobotRegistry</code> class
+     */
+    public RobotRegistry() {
+        this(16);
+    }
+
+    /**
+     * Constructor for the <code>RobotRegistry</code> class
+     *
+     * @param expectedRobots holds the amount of robots the registry can take
+     * before it has to grow
+     */
+    public RobotRegistry(int expectedRobots) {
+        this(expectedRobots, Storage.HEAP);
+    }
+
+    /**
+     * Constructor for the <code>RobotRegistry</code> class
+     *
+     * @param expectedRobots holds the amount of robots the registry can take
+     * before it has to grow
+     * @param storage holds where the columns of the registry are kept
+     */
+    public RobotRegistry(int expectedRobots, Storage storage) {
+        this.storage = storage;
+        this.table = new Table(storage, tableSizeFor(expectedRobots));
+        this.serialNumbers = storage.newIntColumn(Math.max(expectedRobots, 1));
+        this.codes = storage.newLongColumn(Math.max(expectedRobots, 1));
+        this.added = 0;
+        this.size = 0;
+        this.models = new ModelIndex();
+    }
+
+    /*
+     * Constructor for class RobotRegistry taking columns that already hold
+     * robots, along with their model index, e.g. when loading a snapshot
+     */
+    RobotRegistry(Storage storage, IntColumn keys, IntColumn slots, IntColumn serialNumbers, LongColumn codes, int size, ModelIndex models) {
+        this.storage = storage;
+        this.table = new Table(keys, slots);
+        this.serialNumbers = serialNumbers;
+        this.codes = codes;
+        this.added = size;
+        this.size = size;
+        this.models = models;
+    }
+
+    /**
+     * Adds a robot to the registry
+     *
+     * @param robot holds the robot to be added
+     * @return the slot given to the robot
+     * @throws IllegalArgumentException if there already is a robot with the
+     * same serial number
+     */
+    public int add(Robot robot) {
+        return add(robot.getSerialNumber(), robot.getCodes());
+    }
+
+    /**
+     * Adds a robot to the registry without creating a <code>Robot</code>
+     *
+     * @param serialNumber holds the serial number of the robot
+     * @param codes holds the parts and model of the robot as packed by 
+     * {@link Robot#getCodes()}
+     * @return the slot given to the robot
+     * @throws IllegalArgumentException if there already is a robot with the
+     * same serial number
+     */
+    public synchronized int add(int serialNumber, long codes) {
+        int slot = append(serialNumber, codes);
+        size = added;
+        models.publish();
+        return slot;
+    }
+
+    /**
+     * Adds a batch of robots to the registry. They get consecutive slots in 
+     * the order they appear in the array, and become visible to lookups all
+     * at once.
+     *
+     * @param batch holds the robots to be added
+     * @return the slot given to the first robot of the batch
+     * @throws IllegalArgumentException if a serial number is already in use,
+     * in which case the robots before it are still added
+     */
+    public synchronized int addAll(Robot[] batch) {
+        int first = added;
+        try {
+            for (Robot robot : batch) {
+                append(robot.getSerialNumber(), robot.getCodes());
+            }
+        } finally {
+            size = added;
+            models.publish();
+        }
+        return first;
+    }
+
+    /**
+     * Gets the slot of the robot with a particular serial number
+     *
+     * @param serialNumber holds the serial number of the robot
+     * @return the slot of the robot or -1 if there is no such robot
+     */
+    public int slotOf(int serialNumber) {
+        if (serialNumber == EMPTY) {
+            return -1;
+        }
+        // The size is read before anything else, so that everything written
+        // before it was published can be seen
+        int visible = size;
+        Table t = table;
+        int index = t.indexFor(serialNumber);
+        int key;
+        while ((key = t.keys.get(index)) != EMPTY) {
+            if (key == serialNumber) {
+                // A robot still being added may have its key in place but not
+                // yet its slot, which is caught by checking the slot holds
+                // the serial number
+                int slot = t.slots.get(index);
+                return slot < visible && serialNumbers.get(slot) == serialNumber ? slot : -1;
+            }
+            index = (index + 1) & t.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the robot with a particular serial number
+     *
+     * @param serialNumber holds the serial number of the robot
+     * @return the robot or null if there is no such robot
+     */
+    public Robot get(int serialNumber) {
+        int slot = slotOf(serialNumber);
+        return slot < 0 ? null : new Robot(serialNumbers.get(slot), codes.get(slot));
+    }
+
+    /**
+     * Checks whether there is a robot with a particular serial number
+     *
+     * @param serialNumber holds the serial number of the robot
+     * @return true if there is such a robot
+     */
+    public boolean contains(int serialNumber) {
+        return slotOf(serialNumber) >= 0;
+    }
+
+    /**
+     * Gets the robot stored in a particular slot
+     *
+     * @param slot holds a slot from 0 to <code>size() - 1</code>
+     * @return the robot stored in that slot
+     */
+    public Robot getBySlot(int slot) {
+        checkSlot(slot);
+        return new Robot(serialNumbers.get(slot), codes.get(slot));
+    }
+
+    /**
+     * Gets the serial number of the robot stored in a particular slot
+     *
+     * @param slot holds a slot from 0 to <code>size() - 1</code>
+     * @return the serial number of the robot stored in that slot
+     */
+    public int getSerialNumberAt(int slot) {
+        checkSlot(slot);
+        return serialNumbers.get(slot);
+    }
+
+    /**
+     * Gets the packed parts and model of the robot stored in a particular 
+     * slot, without creating a <code>Robot</code>
+     *
+     * @param slot holds a slot from 0 to <code>size() - 1</code>
+     * @return the parts and model as packed by {@link Robot#getCodes()}
+     */
+    public long getCodesAt(int slot) {
+        checkSlot(slot);
+        return codes.get(slot);
+    }
+
+    /**
+     * Gets the line of the robot stored in a particular slot, without 
+     * creating a <code>Robot</code>
+     *
+     * @param slot holds a slot from 0 to <code>size() - 1</code>
+     * @return the line of the robot
+     */
+    public Line getLineAt(int slot) {
+        return Robot.modelOf(getCodesAt(slot)).getLine();
+    }
+
+    /**
+     * Gets the index holding the slots of robots by model
+     *
+     * @return the index holding the slots of robots by model
+     */
+    public ModelIndex getModelIndex() {
+        return models;
+    }
+
+    /**
+     * Gets the amount of robots in the registry. Robots being added by 
+     * another thread are not counted until they can be read in full, so the 
+     * slots below the value returned make up a consistent snapshot.
+     *
+     * @return the amount of robots in the registry
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets an iterator going through all robots in the order they were added
+     *
+     * @return an iterator going through all robots
+     */
+    @Override
+    public Iterator<Robot> iterator() {
+        int visible = size;
+        return new Iterator<Robot>() {
+            private int slot = 0;
+
+            @Override
+            public boolean hasNext() {
+                return slot < visible;
+            }
+
+            @Override
+            public Robot next() {
+                if (slot >= visible) {
+                    throw new NoSuchElementException();
+                }
+                Robot robot = new Robot(serialNumbers.get(slot), codes.get(slot));
+                slot++;
+                return robot;
+            }
+        };
+    }
+
+    /*
+     * Gets the column of the hash table holding serial numbers, used when
+     * writing a snapshot
+     */
+    IntColumn getKeys() {
+        return table.keys;
+    }
+
+    /*
+     * Gets the column of the hash table holding slots, used when writing a
+     * snapshot
+     */
+    IntColumn getSlots() {
+        return table.slots;
+    }
+
+    /*
+     * Checks that a slot holds a robot
+     */
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot: " + slot + ", Size: " + size);
+        }
+    }
+
+    /*
+     * Puts a robot in the next slot and in the hash table without making it
+     * visible. The slot is filled in before the key, and both before the 
+     * size is published.
+     */
+    private int append(int serialNumber, long codes) {
+        if (serialNumber == EMPTY) {
+            throw new IllegalArgumentException("Not a valid serial number: " + serialNumber);
+        }
+        Table t = table;
+        if (added + 1 > t.keys.length() * MAX_LOAD) {
+            t = rehash(t, t.keys.length() * 2);
+        }
+
+        int index = t.indexFor(serialNumber);
+        int key;
+        while ((key = t.keys.get(index)) != EMPTY) {
+            if (key == serialNumber) {
+                throw new IllegalArgumentException("Duplicate serial number: " + serialNumber);
+            }
+            index = (index + 1) & t.mask;
+        }
+
+        if (added == this.codes.length()) {
+            serialNumbers = serialNumbers.copyOf(added * 2);
+            this.codes = this.codes.copyOf(added * 2);
+        }
+        int slot = added++;
+        serialNumbers.set(slot, serialNumber);
+        this.codes.set(slot, codes);
+        t.slots.set(index, slot);
+        t.keys.set(index, serialNumber);
+        models.add(Robot.modelOf(codes), slot);
+        return slot;
+    }
+
+    /*
+     * Moves all entries into a table of a new size, which replaces the old 
+     * one once it is complete
+     */
+    private Table rehash(Table old, int capacity) {
+        Table t = new Table(storage, capacity);
+        for (int i = 0; i < old.keys.length(); i++) {
+            int key = old.keys.get(i);
+            if (key != EMPTY) {
+                int index = t.indexFor(key);
+                while (t.keys.get(index) != EMPTY) {
+                    index = (index + 1) & t.mask;
+                }
+                t.slots.set(index, old.slots.get(i));
+                t.keys.set(index, key);
+            }
+        }
+        table = t;
+        return t;
+    }
+
+    /*
+     * Works out the smallest power of two table that holds the given amount
+     * of entries without going over the maximum load
+     */
+    private static int tableSizeFor(int entries) {
+        long needed = (long) Math.ceil(Math.max(entries, 1) / MAX_LOAD);
+        int capacity = 16;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /*
+     * Open addressing hash table mapping serial numbers to slots. Its columns
+     * and mask are read together through one reference, so a lookup never 
+     * mixes an old table with a new one.
+     */
+    private static final class Table {
+        private final IntColumn keys;
+        private final IntColumn slots;
+        private final int mask;
+
+        private Table(Storage storage, int capacity) {
+            this(storage.newIntColumn(capacity), storage.newIntColumn(capacity));
+        }
+
+        private Table(IntColumn keys, IntColumn slots) {
+            this.keys = keys;
+            this.slots = slots;
+            this.mask = keys.length() - 1;
+        }
+
+        /*
+         * Spreads serial numbers over the table. Serial numbers handed out in
+         * sequence would otherwise cluster into long probe chains.
+         */
+        private int indexFor(int serialNumber) {
+            int h = serialNumber * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
+
+/**
+ * An instance of class <code>RobotServer</code> answers the queries of the 
+ * menu over HTTP, with JSON responses, using the server built into the JDK.
+ * The following requests are understood, all with <code>GET</code>:
+ * <ul>
+ * <li><code>/robots/&lt;serial number&gt;</code> gets a robot with each of 
+ * its parts, along with the old android each part came from if the robot 
+ * belongs to the new line, or the new robot each part went to if it belongs
+ * to the old line</li>
+ * <li><code>/donors/&lt;serial number&gt;</code> gets an old android along 
+ * with the whole of each new robot its parts went to</li>
+ * <li><code>/models/&lt;model&gt;?offset=n&amp;limit=n</code> gets the 
+ * robots of a model, a page at a time. Models are named as in 
+ * {@link Model#fromName(String)}.</li>
+ * <li><code>/counts</code> gets the amount of robots of every model</li>
+ * </ul>
+ * Errors are answered with the matching status code and a JSON object 
+ * holding an <code>error</code> message.
+ * <p>
+ * Requests only read the yard, so they are handled side by side on a fixed
+ * pool of threads, even while robots are still being added. Each request 
+ * sees the robots added so far. Responses are written through a <code>ByteSink</code>
+ * straight from the registry and provenance columns.
+ *
+ * @author Wellington Regis
+ */
+public class RobotServer {
+    /**
+     * Amount of robots listed per page when no limit is given
+     */
+    public static final int DEFAULT_LIMIT = 100;
+
+    /**
+     * Largest amount of robots listed per page
+     */
+    public static final int MAX_LIMIT = 10000;
+
+    private static final PartType[] PARTS = PartType.values();
+
+    static {
+        // Headers and body are sent separately, so with Nagle's algorithm 
+        // every response on a kept alive connection waits for the client's
+        // delayed acknowledgement of the headers. Read when the first server
+        // is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final RobotRegistry robots;
+    private final ProvenanceStore provenance;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for the <code>RobotServer</code> class. The server is not
+     * started.
+     *
+     * @param s holds the setup queries are answered from
+     * @param address holds the address and port the server listens on. Port
+     * 0 picks any free port.
+     * @param threads holds the amount of threads handling requests, where 0
+     * means two per available processor
+     * @throws IOException if the server could not listen on the address
+     */
+    public RobotServer(Setup s, InetSocketAddress address, int threads) throws IOException {
+        this.robots = s.getRobotViaSerial();
+        this.provenance = s.getProvenance();
+        this.server = HttpServer.create(address, 1024);
+        this.executor = Executors.newFixedThreadPool(threads > 0 ? threads : 2 * Runtime.getRuntime().availableProcessors());
+        server.setExecutor(executor);
+        server.createContext("/robots/", exchange -> handle(exchange, this::robot));
+        server.createContext("/donors/", exchange -> handle(exchange, this::donor));
+        server.createContext("/models/", exchange -> handle(exchange, this::model));
+        server.createContext("/counts", exchange -> handle(exchange, this::counts));
+    }
+
+    /**
+     * Starts answering requests, on the threads of the server
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops answering requests, giving requests being answered a few seconds
+     * to finish
+     *
+     * @param delay holds the most seconds to wait for requests to finish
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    /**
+     * Gets the port the server listens on, e.g. to find out which port was
+     * picked when asked for port 0
+     *
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /*
+     * Something that answers a request by writing a JSON response to a sink,
+     * given what follows the path of its context
+     */
+    private interface Endpoint {
+        void answer(String path, String query, ByteSink out) throws IOException;
+    }
+
+    /*
+     * Thrown by endpoints to answer with an error instead of a robot
+     */
+    private static class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /*
+     * Checks a request and answers it through an endpoint, or with an error.
+     * The response is only sent once it has been written in full, so errors
+     * found halfway still get their own status code. Unexpected failures are
+     * logged and answered with status 500.
+     */
+    private void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+            int status = 200;
+            try (ByteSink out = new ByteSink(Channels.newChannel(body), 4096)) {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    throw new RequestException(405, "Only GET is supported");
+                }
+                String context = exchange.getHttpContext().getPath();
+                String path = exchange.getRequestURI().getPath();
+                endpoint.answer(path.length() > context.length() ? path.substring(context.length()) : "", 
+                        exchange.getRequestURI().getRawQuery(), out);
+            } catch (RequestException ex) {
+                status = ex.status;
+                writeError(body, ex.getMessage());
+            } catch (RuntimeException ex) {
+                // Anything else is a bug, which the client is told about 
+                // instead of seeing the connection drop
+                System.err.println("Could not answer " + exchange.getRequestMethod() + " " 
+                        + exchange.getRequestURI() + ": " + ex);
+                ex.printStackTrace();
+                status = 500;
+                writeError(body, "Internal server error");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.size());
+            body.writeTo(exchange.getResponseBody());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+     * Replaces whatever was written to a response body with an error
+     */
+    private static void writeError(ByteArrayOutputStream body, String message) throws IOException {
+        body.reset();
+        try (ByteSink out = new ByteSink(Channels.newChannel(body), 256)) {
+            out.write("{\"error\":").writeJson(message).write((byte) '}');
+        }
+    }
+
+    /*
+     * Answers /robots/<serial number>
+     */
+    private void robot(String path, String query, ByteSink out) throws IOException {
+        writeRobot(out, slotOf(path));
+    }
+
+    /*
+     * Answers /donors/<serial number>
+     */
+    private void donor(String path, String query, ByteSink out) throws IOException {
+        int slot = slotOf(path);
+        long codes = robots.getCodesAt(slot);
+        if (Robot.modelOf(codes).getLine() != Line.OLD) {
+            throw new RequestException(400, "Not an old android: " + path);
+        }
+        writeHead(out, slot, codes);
+        for (PartType part : PARTS) {
+            writePart(out, part, codes).write(",\"destination\":");
+            int recipient = provenance.getRecipientSlotAt(slot, part);
+            if (recipient < 0) {
+                out.write("null");
+            } else {
+                writeRobot(out, recipient);
+            }
+            out.write((byte) '}');
+        }
+        out.write("}}");
+    }
+
+    /*
+     * Answers /models/<model>?offset=n&limit=n
+     */
+    private void model(String path, String query, ByteSink out) throws IOException {
+        Model model;
+        try {
+            model = Model.fromName(URLDecoder.decode(path, "UTF-8"));
+        } catch (IllegalArgumentException ex) {
+            throw new RequestException(404, ex.getMessage());
+        }
+        ModelIndex models = robots.getModelIndex();
+        int count = models.count(model);
+        int offset = parameter(query, "offset", 0, Integer.MAX_VALUE);
+        int limit = parameter(query, "limit", DEFAULT_LIMIT, MAX_LIMIT);
+        int end = (int) Math.min(count, (long) offset + limit);
+
+        out.write("{\"model\":").writeJson(model.getName()).write(",\"count\":").write(count)
+                .write(",\"offset\":").write(offset).write(",\"robots\":[");
+        for (int i = offset; i < end; i++) {
+            if (i > offset) {
+                out.write((byte) ',');
+            }
+            writeRobot(out, models.slotAt(model, i));
+        }
+        out.write("]}");
+    }
+
+    /*
+     * Answers /counts
+     */
+    private void counts(String path, String query, ByteSink out) throws IOException {
+        if (!path.isEmpty()) {
+            throw new RequestException(404, "Not found");
+        }
+        ModelIndex models = robots.getModelIndex();
+        out.write("{\"total\":").write(robots.size()).write(",\"models\":{");
+        for (Model model : Model.values()) {
+            if (model.ordinal() > 0) {
+                out.write((byte) ',');
+            }
+            out.writeJson(model.getName()).write((byte) ':').write(models.count(model));
+        }
+        out.write("}}");
+    }
+
+    /*
+     * Writes a robot as a JSON object, with the origin of each part for new
+     * robots and the destination of each part for old androids
+     */
+    private void writeRobot(ByteSink out, int slot) throws IOException {
+        long codes = robots.getCodesAt(slot);
+        boolean isNew = Robot.modelOf(codes).getLine() == Line.NEW;
+        writeHead(out, slot, codes);
+        for (PartType part : PARTS) {
+            writePart(out, part, codes);
+            if (isNew) {
+                int origin = provenance.getOriginAt(slot, part);
+                out.write(",\"origin\":{\"serialNumber\":").write(origin).write(",\"model\":")
+                        .writeJson(Robot.modelOf(robots.getCodesAt(robots.slotOf(origin))).getName()).write((byte) '}');
+            } else {
+                int recipient = provenance.getRecipientSlotAt(slot, part);
+                out.write(",\"destination\":");
+                if (recipient < 0) {
+                    out.write("null");
+                } else {
+                    out.write(robots.getSerialNumberAt(recipient));
+                }
+            }
+            out.write((byte) '}');
+        }
+        out.write("}}");
+    }
+
+    /*
+     * Writes the serial number, model and line of a robot, opening the object
+     * holding its parts
+     */
+    private void writeHead(ByteSink out, int slot, long codes) throws IOException {
+        Model model = Robot.modelOf(codes);
+        out.write("{\"serialNumber\":").write(robots.getSerialNumberAt(slot))
+                .write(",\"model\":").writeJson(model.getName())
+                .write(",\"line\":").writeJson(model.getLine().getName())
+                .write(",\"parts\":{");
+    }
+
+    /*
+     * Writes the name and type of a part, leaving its object open
+     */
+    private static ByteSink writePart(ByteSink out, PartType part, long codes) throws IOException {
+        if (part.ordinal() > 0) {
+            out.write((byte) ',');
+        }
+        return out.writeJson(part.getName()).write(":{\"type\":")
+                .writeJson(PartDictionary.decode(part, Robot.partCodeOf(codes, part)));
+    }
+
+    /*
+     * Gets the slot of the robot whose serial number makes up a path
+     */
+    private int slotOf(String path) {
+        int serialNumber;
+        try {
+            serialNumber = Integer.parseInt(path);
+        } catch (NumberFormatException ex) {
+            throw new RequestException(400, "Not a serial number: " + path);
+        }
+        int slot = robots.slotOf(serialNumber);
+        if (slot < 0) {
+            throw new RequestException(404, "No such robot found: " + serialNumber);
+        }
+        return slot;
+    }
+
+    /*
+     * Gets a whole number from the query of a request, from 0 to 'max'
+     */
+    private static int parameter(String query, String name, int defaultValue, int max) {
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                try {
+                    int value = Integer.parseInt(pair.substring(equals + 1));
+                    if (value >= 0 && value <= max) {
+                        return value;
+                    }
+                } catch (NumberFormatException ex) {
+                    // Reported below along with values out of range
+                }
+                throw new RequestException(400, "Parameter " + name + " must be a whole number from 0 to " + max);
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * An instance of class <code>RunConfiguration</code> holds the settings of a
+ * single run of the AndroidsRus program, such as the amount of old androids
+ * to be created and the amount of new robots to be built from them. Settings
+ * are read from the command line, optionally from a properties file given
+ * with <code>--config=file</code>. Options on the command line take
+ * precedence over the ones in the file.
+ *
+ * @author Wellington Regis
+ */
+public class RunConfiguration {
+    /**
+     * Amount of old androids created when nothing else is configured
+     */
+    public static final int DEFAULT_DONORS = 500;
+
+    /**
+     * Amount of new robots built when nothing else is configured
+     */
+    public static final int DEFAULT_BUILDS = 400;
+
+    /**
+     * Amount of distinct 7 digit serial numbers, which limits the total
+     * amount of robots in a run
+     */
+    public static final int SERIAL_NUMBER_CAPACITY = 9000000;
+
+    // Names of all settings, which are the only ones accepted
+    private static final Set<String> OPTIONS = new HashSet<>(Arrays.asList(
+            "donors", "builds", "threads", "seed", "storage", "load", "save", 
+            "import", "export", "batch", "serve", "serve-threads", "journal",
+            "fsync", "compact"));
+
+    private final Properties properties;
+
+    /*
+     * Constructor for class RunConfiguration
+     */
+    private RunConfiguration(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Creates a configuration holding only the default settings
+     *
+     * @return a configuration holding only the default settings
+     */
+    public static RunConfiguration defaults() {
+        return new RunConfiguration(new Properties());
+    }
+
+    /**
+     * Creates a configuration from the command line arguments. Arguments have
+     * the form <code>--name=value</code>, e.g. <code>--donors=100000</code>.
+     * Unknown names are rejected, on the command line as well as in a 
+     * properties file, so that a misspelt setting is not silently ignored.
+     *
+     * @param args holds the command line arguments
+     * @return a configuration holding the settings found
+     * @throws IllegalArgumentException if an argument or setting is not valid
+     */
+    public static RunConfiguration fromArguments(String[] args) {
+        Properties fromFile = new Properties();
+        Properties fromArgs = new Properties();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+
+            // Properties from a file are loaded first so that the command
+            // line can override them
+            if (name.equals("config")) {
+                try (Reader reader = new FileReader(value)) {
+                    fromFile.load(reader);
+                } catch (IOException ex) {
+                    throw new IllegalArgumentException("Could not read configuration file " + value, ex);
+                }
+                for (String fileName : fromFile.stringPropertyNames()) {
+                    checkOption(fileName);
+                }
+            } else {
+                checkOption(name);
+                fromArgs.setProperty(name, value);
+            }
+        }
+        fromFile.putAll(fromArgs);
+
+        RunConfiguration config = new RunConfiguration(fromFile);
+        config.validate();
+        return config;
+    }
+
+    /**
+     * Gets the amount of old androids to be created
+     *
+     * @return the amount of old androids to be created
+     */
+    public int getDonors() {
+        return getInt("donors", DEFAULT_DONORS);
+    }
+
+    /**
+     * Gets the amount of new robots to be built
+     *
+     * @return the amount of new robots to be built
+     */
+    public int getBuilds() {
+        return getInt("builds", DEFAULT_BUILDS);
+    }
+
+    /**
+     * Gets the amount of threads used to generate robots. A value of 1 means
+     * robots are generated on the main thread and 0 means one thread per 
+     * available processor.
+     *
+     * @return the amount of threads used to generate robots
+     */
+    public int getThreads() {
+        int threads = getInt("threads", 1);
+        return threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Gets where robots and the origin of their parts are stored, set with
+     * <code>--storage=heap</code> (the default) or <code>--storage=offheap
+     * </code>
+     *
+     * @return where robots and the origin of their parts are stored
+     * @throws IllegalArgumentException if the storage is unknown
+     */
+    public Storage getStorage() {
+        return Storage.fromName(properties.getProperty("storage", Storage.HEAP.getName()).trim());
+    }
+
+    /**
+     * Gets the snapshot to load the yard from instead of generating it, set
+     * with <code>--load=file</code>
+     *
+     * @return the path of the snapshot or null if the yard is to be generated
+     */
+    public Path getLoad() {
+        return getPath("load");
+    }
+
+    /**
+     * Gets the file the yard is saved to once it is ready, set with 
+     * <code>--save=file</code>
+     *
+     * @return the path of the snapshot or null if the yard is not to be saved
+     */
+    public Path getSave() {
+        return getPath("save");
+    }
+
+    /**
+     * Gets the file old androids are imported from instead of generating 
+     * them, set with <code>--import=file</code>. The amount of donors is then
+     * only used to size data structures up front.
+     *
+     * @return the path of the CSV or TSV file or null if old androids are to
+     * be generated
+     */
+    public Path getImport() {
+        return getPath("import");
+    }
+
+    /**
+     * Gets the file the new robots and the origin of their parts are exported
+     * to, set with <code>--export=file</code>. Files ending in <code>.jsonl
+     * </code> or <code>.json</code> get JSON Lines, any other file gets CSV.
+     *
+     * @return the path of the export file or null if robots are not exported
+     */
+    public Path getExport() {
+        return getPath("export");
+    }
+
+    /**
+     * Gets the file queries are read from instead of running the menu, set 
+     * with <code>--batch=file</code>. A file named <code>-</code> stands for
+     * the standard input.
+     *
+     * @return the path of the batch file or null if the menu is to be run
+     */
+    public Path getBatch() {
+        return getPath("batch");
+    }
+
+    /**
+     * Gets the port queries are answered on over HTTP instead of running the
+     * menu, set with <code>--serve=port</code>. Port 0 picks any free port.
+     *
+     * @return the port or -1 if queries are not served over HTTP
+     */
+    public int getServe() {
+        return getInt("serve", -1);
+    }
+
+    /**
+     * Gets the amount of threads answering HTTP requests, set with <code>
+     * --serve-threads=n</code>. The default of 0 means two per available 
+     * processor.
+     *
+     * @return the amount of threads answering HTTP requests
+     */
+    public int getServeThreads() {
+        return getInt("serve-threads", 0);
+    }
+
+    /**
+     * Gets the journal robots are logged to, set with <code>--journal=file
+     * </code>. A journal holding robots is replayed on startup instead of
+     * generating the yard.
+     *
+     * @return the path of the journal or null if robots are not logged
+     */
+    public Path getJournal() {
+        return getPath("journal");
+    }
+
+    /**
+     * Gets after how many batches the journal is forced to disk, set with 
+     * <code>--fsync=n</code>. The default of 1 forces every batch and 0 
+     * leaves it to the operating system.
+     *
+     * @return after how many batches the journal is forced to disk
+     */
+    public int getFsync() {
+        return getInt("fsync", 1);
+    }
+
+    /**
+     * Gets after how many batches the journal is compacted into the snapshot
+     * given with <code>--save</code>, set with <code>--compact=n</code>. The
+     * default of 0 compacts it only once the yard is ready.
+     *
+     * @return after how many batches the journal is compacted
+     */
+    public int getCompact() {
+        return getInt("compact", 0);
+    }
+
+    /**
+     * Checks whether a seed was configured
+     *
+     * @return true if a seed was configured
+     */
+    public boolean hasSeed() {
+        return properties.getProperty("seed") != null;
+    }
+
+    /**
+     * Gets the seed all random choices of the run are derived from
+     *
+     * @return the configured seed
+     * @throws IllegalArgumentException if the seed is missing or not a number
+     */
+    public long getSeed() {
+        String value = properties.getProperty("seed");
+        if (value == null) {
+            throw new IllegalArgumentException("No seed configured");
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Setting seed is not a number: " + value);
+        }
+    }
+
+    /**
+     * Gets a setting holding an integer
+     *
+     * @param name holds the name of the setting
+     * @param defaultValue holds the value used when the setting is missing
+     * @return the value of the setting
+     * @throws IllegalArgumentException if the setting is not a number
+     */
+    public int getInt(String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Setting " + name + " is not a number: " + value);
+        }
+    }
+
+    /**
+     * Gets a setting holding the path of a file
+     *
+     * @param name holds the name of the setting
+     * @return the path or null if the setting is missing
+     * @throws IllegalArgumentException if the setting is not a valid path
+     */
+    public Path getPath(String name) {
+        String value = properties.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Paths.get(value.trim());
+        } catch (InvalidPathException ex) {
+            throw new IllegalArgumentException("Setting " + name + " is not a valid path: " + value);
+        }
+    }
+
+    /*
+     * Checks that a setting has a known name
+     */
+    private static void checkOption(String name) {
+        if (!OPTIONS.contains(name)) {
+            throw new IllegalArgumentException("Unknown option: " + name);
+        }
+    }
+
+    /*
+     * Checks that the sizes requested can actually be generated. Every new
+     * robot takes one part of each type from a different pool entry, so there
+     * can never be more new robots than old androids.
+     */
+    private void validate() {
+        int donors = getDonors();
+        int builds = getBuilds();
+
+        if (donors < 1) {
+            throw new IllegalArgumentException("There must be at least one old android");
+        }
+        if (builds < 0) {
+            throw new IllegalArgumentException("The amount of new robots cannot be negative");
+        }
+        if (builds > donors && getImport() == null) {
+            throw new IllegalArgumentException("Cannot build " + builds
+                    + " new robots from only " + donors + " old androids");
+        }
+        if (hasSeed()) {
+            getSeed();
+        }
+        getStorage();
+        getLoad();
+        getSave();
+        getJournal();
+        if (getFsync() < 0 || getCompact() < 0) {
+            throw new IllegalArgumentException("Settings fsync and compact cannot be negative");
+        }
+        if (getServe() < -1 || getServe() > 65535) {
+            throw new IllegalArgumentException("The port to serve on must be from 0 to 65535");
+        }
+        if (getServeThreads() < 0) {
+            throw new IllegalArgumentException("The amount of threads serving requests cannot be negative");
+        }
+        if (getInt("threads", 1) < 0) {
+            throw new IllegalArgumentException("The amount of threads cannot be negative");
+        }
+        if ((long) donors + builds > SERIAL_NUMBER_CAPACITY) {
+            throw new IllegalArgumentException("At most " + SERIAL_NUMBER_CAPACITY
+                    + " robots fit into the 7 digit serial number range");
+        }
+    }
+}
@@ -16,7 +16,9 @@
  */
 package androidsrus;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class contains methods for creating new robots from old ones, as well as
@@ -25,6 +27,8 @@ import java.util.*;
  * @author Wellington Regis
  */
 public class Scavenger {
+    private static final PartType[] PARTS = PartType.values();
+    private static final Model[] MODELS = Model.ofLine(Line.NEW);
 
     /**
      * Creates new robots and stores info on the origin and destination of robot
@@ -35,78 +39,194 @@ public class Scavenger {
      * parts
      */
     public static void createNewRobots(Setup s) {
-        String model;
+        createNewRobots(s, RunConfiguration.DEFAULT_BUILDS);
+    }
+
+    /**
+     * Creates a given amount of new robots and stores info on the origin and 
+     * destination of robot parts
+     *
+     * @param s contains an instance of the <code>Setup</code> class holding all
+     * the information concerning robots and the origin and destination of robot
+     * parts
+     * @param amount holds the amount of new robots to be created
+     */
+    public static void createNewRobots(Setup s, int amount) {
+        createNewRobots(s, amount, null);
+    }
+
+    /**
+     * Creates a given amount of new robots and stores info on the origin and 
+     * destination of robot parts. Robots are built in chunks, each with its 
+     * own random number generator and its own segment of every part pool, so
+     * chunks can be spread over threads without competing for parts. A chunk
+     * whose segment runs out claims parts from the segments of other chunks,
+     * racing their threads through the claims of the setup, so every part 
+     * still goes to exactly one robot. Chunks are added to the registry and
+     * logged to the journal in order as soon as they are built.
+     * <p>
+     * Only the chunks of one call run in parallel. The part pools stay split
+     * until the call returns, so it must not run concurrently with any other
+     * call creating robots for the same setup.
+     *
+     * @param s contains an instance of the <code>Setup</code> class holding all
+     * the information concerning robots and the origin and destination of robot
+     * parts
+     * @param amount holds the amount of new robots to be created
+     * @param pool holds the thread pool used to build robots, or null to build
+     * them on the calling thread
+     */
+    public static void createNewRobots(Setup s, int amount, ForkJoinPool pool) {
+        Utilities utilities = Utilities.getInstance();
+        int chunks = utilities.chunksFor(amount);
+        int firstSlot = s.getRobotViaSerial().size();
+        Commits commits = new Commits(s, firstSlot, amount, chunks);
+        List<Callable<Void>> tasks = new ArrayList<>(chunks);
+
+        // Every chunk takes parts from its own segment of each pool
+        PartPool.Segment[][] segments = new PartPool.Segment[PartType.COUNT][];
+        for (PartType part : PARTS) {
+            segments[part.ordinal()] = part.getPool(s).split(chunks);
+        }
+
+        // Cells for the new robots are made before any task runs, since the 
+        // store cannot grow while tasks write to it
+        s.getProvenance().ensureCapacity(firstSlot + amount);
+
+        for (int c = 0; c < chunks; c++) {
+            int from = (int) ((long) amount * c / chunks);
+            int to = (int) ((long) amount * (c + 1) / chunks);
+
+            // Randomly picks serial numbers making sure they are unique
+            int[] serialNumbers = new int[to - from];
+            for (int i = 0; i < serialNumbers.length; i++) {
+                serialNumbers[i] = s.getSerialNumberAllocator().next();
+            }
+            SplittableRandom random = s.getRandom().getParts().split();
+
+            int chunk = c;
+            tasks.add(() -> {
+                Robot[] batch = new Robot[serialNumbers.length];
+                int[] donors = new int[serialNumbers.length * PartType.COUNT];
+
+                // Parts are taken without claims until the segments are 
+                // released, which lets chunks that run out claim whatever 
+                // this one did not use
+                for (PartType part : PARTS) {
+                    segments[part.ordinal()][chunk].own();
+                }
+                try {
+                    buildRobots(s, batch, from, serialNumbers, firstSlot, segments, chunk, donors, random);
+                } finally {
+                    for (PartType part : PARTS) {
+                        segments[part.ordinal()][chunk].release();
+                    }
+                }
+                commits.built(chunk, batch, donors);
+                return null;
+            });
+        }
+
+        try {
+            utilities.runTasks(tasks, pool);
+        } finally {
+            // Drops the entries other chunks claimed but their owners never 
+            // got to
+            for (PartType part : PARTS) {
+                part.getPool(s).join(segments[part.ordinal()], s.getClaims(), part);
+            }
+        }
+
+        // The journal could not be compacted while the pools were split
+        if (s.getJournal() != null) {
+            try {
+                s.getJournal().compactIfDue(s);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not compact journal", ex);
+            }
+        }
+    }
+
+    /*
+     * Builds the robots of one chunk
+     *
+     * @param s holds an instance of the class <code>Setup</code>
+     * @param batch holds the array receiving the robots of the chunk
+     * @param from holds the position of the first robot of the chunk among 
+     * all robots being built
+     * @param serialNumbers holds the serial numbers of the robots of the chunk
+     * @param firstSlot holds the registry slot the first robot being built 
+     * will be given
+     * @param segments holds the pool segments of every chunk, indexed by the
+     * ordinal of their part type and then by chunk
+     * @param chunk holds the index of the chunk, whose own segments are used
+     * first
+     * @param donors holds the array receiving the registry slots of the 
+     * donors of every part, robot after robot, for storing destinations later
+     * @param random holds the random number generator of the chunk
+     */
+    private static void buildRobots(Setup s, Robot[] batch, int from, int[] serialNumbers, int firstSlot, PartPool.Segment[][] segments, int chunk, int[] donors, SplittableRandom random) {
+        Model model;
         int serialNumber;
-        String brain;
-        String mobility;
-        String vision;
-        String arms;
-        String mediaCenter;
-        String powerPlant;
-        int brainSerialNumber;
-        int mobilitySerialNumber;
-        int visionSerialNumber;
-        int armsSerialNumber;
-        int mediaCenterSerialNumber;
-        int powerPlantSerialNumber;
+        long codes; // parts and model of the new robot, packed
+        int[] chosenParts = new int[PartType.COUNT]; // registry slots of donors
+        int[] saturated = new int[PartType.COUNT / 2]; // donors already giving two parts
 
         // Iterates for the creation of the robots
-        for (int i = 0; i < 400; i++) {
+        for (int i = 0; i < serialNumbers.length; i++) {
 
             // Randomly picks a model
-            model = Utilities.getInstance().pickARandomString("Andy the Android", "Betty the Busibot", "Bobi the Racedroid", "Fred the Friendlybot");
-
-            // Randomly pciks a serial number making sure it is unique
-            serialNumber = Utilities.getInstance().pickARandomSerialNumber(s.getRobotViaSerial());
+            model = Utilities.getInstance().pickARandomOption(random, MODELS);
+            serialNumber = serialNumbers[i];
+            codes = Robot.withModel(0L, model);
 
             /*
-             * The following is done six times, once for each robot part
-             * (1) Randomly picks the serial number of an available part making 
-             * sure that no more than two parts come from the same old android
-             * (2) Gets parts using previously picked serial numbers
-             * (3) Stores information on the destination of parts
-             * (4) Stores information on the origins of parts
+             * The following is done once for each robot part, in the order 
+             * the part types are declared
+             * (1) Randomly picks the slot of an available part making sure 
+             * that no more than two parts come from the same old android
+             * (2) Copies the code of the part from the donor, so parts never
+             * have to be looked up in the dictionary
+             * (3) Remembers the donor so that the origin and destination of 
+             * the part can be stored once the robot is created
              */
-            
-            // Brain
-            brainSerialNumber = getRandomAvailablePart(s.getAvailableBrain(), "brain", null);
-            brain = s.getRobotViaSerial().get(brainSerialNumber).getBrain();
-            assignPartDestination(s, "brain", brainSerialNumber, serialNumber);
-            assignPartOrigin(s, "brain", serialNumber, brainSerialNumber);
-            
-            // Mobility
-            mobilitySerialNumber = getRandomAvailablePart(s.getAvailableMobility(), "mobility", null);
-            mobility = s.getRobotViaSerial().get(mobilitySerialNumber).getMobility();
-            assignPartDestination(s, "mobility", mobilitySerialNumber, serialNumber);
-            assignPartOrigin(s, "mobility", serialNumber, mobilitySerialNumber);
-            
-            // Vision
-            visionSerialNumber = getRandomAvailablePart(s.getAvailableVision(), "vision", s.getPartOrigin().get(serialNumber));
-            vision = s.getRobotViaSerial().get(visionSerialNumber).getVision();
-            assignPartDestination(s, "vision", visionSerialNumber, serialNumber);
-            assignPartOrigin(s, "vision", serialNumber, visionSerialNumber);
-            
-            // Arms
-            armsSerialNumber = getRandomAvailablePart(s.getAvailableArms(), "arms", s.getPartOrigin().get(serialNumber));
-            arms = s.getRobotViaSerial().get(armsSerialNumber).getArms();
-            assignPartDestination(s, "arms", armsSerialNumber, serialNumber);
-            assignPartOrigin(s, "arms", serialNumber, armsSerialNumber);
-            
-            // Media Center
-            mediaCenterSerialNumber = getRandomAvailablePart(s.getAvailableMediaCenter(), "mediaCenter", s.getPartOrigin().get(serialNumber));
-            mediaCenter = s.getRobotViaSerial().get(mediaCenterSerialNumber).getMediaCenter();
-            assignPartDestination(s, "mediaCenter", mediaCenterSerialNumber, serialNumber);
-            assignPartOrigin(s, "mediaCenter", serialNumber, mediaCenterSerialNumber);
-            
-            // Power Plant
-            powerPlantSerialNumber = getRandomAvailablePart(s.getAvailablePowerPlant(), "powerplant", s.getPartOrigin().get(serialNumber));
-            powerPlant = s.getRobotViaSerial().get(powerPlantSerialNumber).getPowerPlant();
-            assignPartDestination(s, "powerPlant", powerPlantSerialNumber, serialNumber);
-            assignPartOrigin(s, "powerPlant", serialNumber, powerPlantSerialNumber);
-
-            // Creates new robot and then adds it to pool of robots
-            Robot robot = new Robot(model, serialNumber, brain, mobility, vision, arms, mediaCenter, powerPlant);
-            s.getRobotViaSerial().put(serialNumber, robot);
+            for (PartType part : PARTS) {
+                int donor = getRandomAvailablePart(segments, chunk, s.getClaims(), part, chosenParts, part.ordinal(), saturated, random);
+                chosenParts[part.ordinal()] = donor;
+                codes = Robot.withPartCode(codes, part, Robot.partCodeOf(s.getRobotViaSerial().getCodesAt(donor), part));
+            }
+
+            // Creates new robot, which is added to pool of robots once the 
+            // chunk and all chunks before it are done
+            Robot robot = new Robot(serialNumber, codes);
+            batch[i] = robot;
+            int slot = firstSlot + from + i;
+
+            // Stores information on the origin of parts. Their destination is
+            // stored once the robot has been added.
+            for (PartType part : PARTS) {
+                assignPartOrigin(s, part, slot, chosenParts[part.ordinal()]);
+                donors[i * PartType.COUNT + part.ordinal()] = chosenParts[part.ordinal()];
+            }
+        }
+    }
+
+    /*
+     * Stores the destination of every part of a run of new robots that have
+     * already been added
+     *
+     * @param s holds an instance of the class <code>Setup</code>
+     * @param first holds the registry slot of the first robot
+     * @param donors holds the registry slots of the donors of every part, 
+     * robot after robot, as filled in by buildRobots
+     */
+    private static void assignPartDestinations(Setup s, int first, int[] donors) {
+        RobotRegistry robots = s.getRobotViaSerial();
+        for (int i = 0; i < donors.length / PartType.COUNT; i++) {
+            int serialNumber = robots.getSerialNumberAt(first + i);
+            for (PartType part : PARTS) {
+                assignPartDestination(s, part, donors[i * PartType.COUNT + part.ordinal()], serialNumber);
+            }
         }
     }
 
@@ -115,23 +235,13 @@ public class Scavenger {
      * part
      *
      * @param s holds an instance of the class <code>Setup</code>
-     * @param part holds a string with the name of the robot part (e.g. "arms")
-     * @param origin holds an integer with the serial number of the donating
-     * robot
+     * @param part holds the type of the robot part (e.g. ARMS)
+     * @param originSlot holds the registry slot of the donating robot
      * @param destination holds an integer with the serial number of the robot
      * receiving the part
      */
-    private static void assignPartDestination(Setup s, String part, int origin, int destination) {
-        // Do this in case the donating robot has already donated a part, and
-        // therefore there already is an entry for this robot in the hash map 
-        // 'partDestination'.
-        if (s.getPartDestination().containsKey(origin)) {
-            s.getPartDestination().get(origin).put(part, destination);
-        } // Otherwise, do this: firstly create and entry and then store info.
-        else {
-            s.getPartDestination().put(origin, new HashMap<>());
-            s.getPartDestination().get(origin).put(part, destination);
-        }
+    private static void assignPartDestination(Setup s, PartType part, int originSlot, int destination) {
+        s.getProvenance().setDestinationAt(originSlot, part, destination);
     }
 
     /*
@@ -139,85 +249,165 @@ public class Scavenger {
      * from the new line
      *
      * @param s holds an instance of the class <code>Setup</code>
-     * @param part holds a string with the name of the robot part (e.g. "arms")
-     * @param destination holds an integer with the serial number of the robot
-     * receiving the part
-     * @param origin holds an integer with the serial number of the donating
-     * robot
+     * @param part holds the type of the robot part (e.g. ARMS)
+     * @param destinationSlot holds the registry slot of the robot receiving 
+     * the part
+     * @param originSlot holds the registry slot of the donating robot
      */
-    private static void assignPartOrigin(Setup s, String part, int destination, int origin) {
-        // Do this in case the receiving robot has already received a part, and
-        // therefore there already is an entry for this robot in the hash map 
-        // 'partOrigin'.
-        if (s.getPartOrigin().containsKey(destination)) {
-            s.getPartOrigin().get(destination).put(part, origin);
-        } // Otherwise, do this: firstly create and entry and then store info.
-        else {
-            s.getPartOrigin().put(destination, new HashMap<>());
-            s.getPartOrigin().get(destination).put(part, origin);
-        }
+    private static void assignPartOrigin(Setup s, PartType part, int destinationSlot, int originSlot) {
+        int origin = s.getRobotViaSerial().getSerialNumberAt(originSlot);
+        s.getProvenance().setOriginAt(destinationSlot, part, origin);
     }
 
     /*
-     * This method receives a hash set with serial numbers from available robot
-     * parts and keeps picking a random serial number until the following rule
-     * is not broken: No robot from the new line should have more than two parts
-     * originating from the same old android. Once a suitable part has been
-     * found, the entry for that part is removed from the hash set.
+     * This method receives a pool with the slots of available robot parts and
+     * picks a random one such that the following rule is not broken: No robot
+     * from the new line should have more than two parts originating from the
+     * same old android. Donors that already gave two parts are excluded before
+     * the draw, so a single draw is always enough unless another chunk has 
+     * claimed the part meanwhile. Once a suitable part has been found, the 
+     * entry for that part is removed from the pool. If the segment of the 
+     * chunk has no suitable part left, one is claimed from another segment,
+     * with the same donors excluded. The chunk then releases all of its
+     * segments, so that chunks running out of different parts at the same 
+     * time never wait for each other.
      *
-     * @param set holds a hash set with serial numbers from all available parts
-     * of a particular type (such as "brain")
-     * @param part holds a String with the name of the part (e.g. "arms" or
-     * "vision")
-     * @param alreadyChosenParts holds a hash map with part name Strings as keys
-     * and serial numbers as values. It has all the serial numbers from all the
-     * parts that have already been chosen for the construction of the new robot
-     * @return suitable serial number for robot part
+     * @param segments holds the pool segments of every chunk for every part
+     * type, indexed by part type first
+     * @param chunk holds the index of the chunk picking the part
+     * @param claims holds the claims of the parts of every old android
+     * @param part holds the type of the part (e.g. ARMS or VISION)
+     * @param alreadyChosenParts holds an array with the slots from all the 
+     * parts that have already been chosen for the construction of the new 
+     * robot, in the order the parts were chosen
+     * @param chosenCount holds the amount of parts already chosen
+     * @param saturated holds an array used to collect the donors that must be
+     * excluded. It is passed in so that no array is allocated per part.
+     * @param random holds the random number generator to be used
+     * @return suitable slot for robot part
+     * @throws IllegalStateException if no available part can be used without
+     * breaking the rule
      */
-    private static int getRandomAvailablePart(HashSet<Integer> set, String part, HashMap alreadyChosenParts) {
-
-        Random r = Utilities.getInstance().getR();
-
-        // Puts all available entries into array and then randomly selects one.
-        Object[] keys = set.toArray();
-        int randomPartSerialNumber = Integer.parseInt(keys[r.nextInt(keys.length)].toString());
-
-        // Since "brain" and "mobility" are always chosen first, they will never
-        // break the rule of a maximum of 2 parts from same robot, therefore
-        // remove entry from hash sets of available parts and return suitable
-        // serial number.
-        if (part.equals("brain") || part.equals("mobility")) {
-            set.remove(randomPartSerialNumber);
-            return randomPartSerialNumber;
-        } // For all the other parts, origins of the previously picked parts need 
+    static int getRandomAvailablePart(PartPool.Segment[][] segments, int chunk, PartClaims claims, PartType part, int[] alreadyChosenParts, int chosenCount, int[] saturated, SplittableRandom random) {
+
+        int saturatedCount = 0;
+
+        // Parts that are always chosen first (such as brain and mobility) 
+        // will never break the rule of a maximum of 2 parts from same robot, 
+        // so only the other parts need the origins of previously picked parts
         // to be checked.
-        else {
-            int counter = 0; // counter for previous occurances of same serial number
-
-            // Puts serial numbers from already chosen parts into a collection
-            Collection originSet = alreadyChosenParts.values();
-
-            // Iterates through collection 
-            Iterator itr = originSet.iterator();
-            while (itr.hasNext()) {
-                int otherSerialNumbers = Integer.parseInt(itr.next().toString());
-
-                // If previously chosen part serial number equals the randomly
-                // picked serial number being currently checked, increase 
-                // counter
-                if (otherSerialNumbers == randomPartSerialNumber) {
-                    counter++;
+        if (part.checksDonorLimit()) {
+            for (int j = 0; j < chosenCount; j++) {
+                int counter = 0; // counter for occurances of same slot
+                for (int k = 0; k < j; k++) {
+                    if (alreadyChosenParts[k] == alreadyChosenParts[j]) {
+                        counter++;
+                    }
+                }
+                // The second occurance of a donor means it is saturated
+                if (counter == 1) {
+                    saturated[saturatedCount++] = alreadyChosenParts[j];
+                }
+            }
+        }
+
+        PartPool.Segment[] pool = segments[part.ordinal()];
+        int slot = pool[chunk].take(claims, part, random, saturated, saturatedCount);
+        if (slot >= 0) {
+            return slot;
+        }
+
+        // The segment has no suitable part left, so other chunks may claim 
+        // from it from now on, as this one does from theirs. The segments of
+        // the other parts are released as well: a chunk waiting here must 
+        // not keep parts another waiting chunk is out of, or both would wait
+        // forever. Segments are tried in turn, starting after this one so 
+        // that chunks running out at the same time spread out. Segments 
+        // still used by their own chunks may have parts later, so they are 
+        // waited for, and since their chunks either finish or come here and
+        // release them, waiting always ends.
+        for (PartPool.Segment[] other : segments) {
+            other[chunk].release();
+        }
+        boolean busy = true;
+        while (busy) {
+            busy = false;
+            for (int i = 1; i < pool.length; i++) {
+                slot = pool[(chunk + i) % pool.length].claimExcluding(claims, part, random, saturated, saturatedCount);
+                if (slot >= 0) {
+                    return slot;
                 }
+                busy |= slot == PartPool.BUSY;
+            }
+            if (busy) {
+                Thread.yield();
+            }
+        }
+        throw new IllegalStateException("No old android has a " 
+                + part.getName() + " left that can be used without giving"
+                + " more than two parts to the same new robot");
+    }
+
+    /*
+     * Commits the chunks of a build in order as they are done: the robots of 
+     * a chunk are added to the registry once it and all chunks before it are 
+     * built, so they get the slots their origins were recorded against. The 
+     * destinations of their parts are then stored and the chunk is logged, 
+     * so a crash only loses the chunks that were not committed yet.
+     */
+    private static final class Commits {
+        private final Setup s;
+        private final int firstSlot;
+        private final int amount;
+        private final Robot[][] batches; // built chunks waiting for earlier ones
+        private final int[][] donors;
+        private int next; // first chunk not committed yet
+
+        /*
+         * Constructor for class Commits
+         */
+        private Commits(Setup s, int firstSlot, int amount, int chunks) {
+            this.s = s;
+            this.firstSlot = firstSlot;
+            this.amount = amount;
+            this.batches = new Robot[chunks][];
+            this.donors = new int[chunks][];
+            this.next = 0;
+        }
+
+        /*
+         * Records that a chunk has been built and commits every chunk that 
+         * can be committed now, in order
+         */
+        private synchronized void built(int chunk, Robot[] batch, int[] chunkDonors) {
+            batches[chunk] = batch;
+            donors[chunk] = chunkDonors;
+            while (next < batches.length && batches[next] != null) {
+                commit(next);
+                batches[next] = null;
+                donors[next] = null;
+                next++;
             }
-            // In case there are already two parts originating from the same 
-            // robot, call function again.
-            if (counter >= 2) {
-                return getRandomAvailablePart(set, part, alreadyChosenParts);
-            } // In case serial number is suitable, remove it from set of 
-            // available parts and return it
-            else {
-                set.remove(randomPartSerialNumber);
-                return randomPartSerialNumber;
+        }
+
+        /*
+         * Adds the robots of a chunk, then marks the parts of their donors as
+         * given away, so that anyone finding a destination can also find its
+         * robot, and logs them along with the origin of their parts
+         */
+        private void commit(int chunk) {
+            int from = (int) ((long) amount * chunk / batches.length);
+            s.getRobotViaSerial().addAll(batches[chunk]);
+            assignPartDestinations(s, firstSlot + from, donors[chunk]);
+
+            // Compacting waits until the build is done, since the pools 
+            // cannot be saved while they are split
+            if (s.getJournal() != null) {
+                try {
+                    s.getJournal().appendBuilds(s, firstSlot + from, batches[chunk].length, false);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Could not log new robots", ex);
+                }
             }
         }
     }
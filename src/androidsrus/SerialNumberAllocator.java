@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+
+/**
+ * An instance of class <code>SerialNumberAllocator</code> hands out random 7
+ * digit serial numbers (from 1,000,000 to 9,999,999) that are guaranteed to be
+ * unique.
+ * <p>
+ * Serial numbers are produced by walking a counter through a keyed
+ * permutation of the 24 bit numbers, so the sequence looks random but never
+ * repeats itself. Values falling outside of the range are skipped, which on
+ * average costs less than one extra step per serial number. A bitmap over the
+ * range records the serial numbers in use, so that numbers claimed through
+ * {@link #reserve(int)} are never handed out again.
+ *
+ * @author Wellington Regis
+ */
+public class SerialNumberAllocator {
+    /**
+     * Smallest valid serial number
+     */
+    public static final int MIN_SERIAL_NUMBER = 1000000;
+
+    /**
+     * Largest valid serial number
+     */
+    public static final int MAX_SERIAL_NUMBER = 9999999;
+
+    private static final int RANGE = MAX_SERIAL_NUMBER - MIN_SERIAL_NUMBER + 1;
+    private static final int DOMAIN_BITS = 24; // 2^24 is the first power of two above RANGE
+    private static final int HALF_BITS = DOMAIN_BITS / 2;
+    private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+
+    private final int[] roundKeys;
+    private final BitSet used;
+    private int counter;
+    private int allocated;
+
+    /**
+     * Constructor for the <code>SerialNumberAllocator</code> class
+     *
+     * @param r holds the random number generator used to pick the order in
+     * which serial numbers are handed out
+     */
+    public SerialNumberAllocator(SplittableRandom r) {
+        this.roundKeys = new int[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            roundKeys[i] = r.nextInt();
+        }
+        this.used = new BitSet(RANGE);
+        this.counter = 0;
+        this.allocated = 0;
+    }
+
+    /*
+     * Constructor for class SerialNumberAllocator picking up where another
+     * allocator left off, e.g. when loading a snapshot
+     */
+    SerialNumberAllocator(int[] roundKeys, int counter, BitSet used) {
+        this.roundKeys = roundKeys.clone();
+        this.used = (BitSet) used.clone();
+        this.counter = counter;
+        this.allocated = used.cardinality();
+    }
+
+    /**
+     * Hands out a serial number that has not been used before
+     *
+     * @return a random and unique serial number
+     * @throws IllegalStateException if all serial numbers are in use
+     */
+    public int next() {
+        while (counter < (1 << DOMAIN_BITS)) {
+            int offset = permute(counter++);
+
+            // Skips values outside of the range as well as numbers that were
+            // reserved by someone else
+            if (offset < RANGE && !used.get(offset)) {
+                used.set(offset);
+                allocated++;
+                return MIN_SERIAL_NUMBER + offset;
+            }
+        }
+        throw new IllegalStateException("All " + RANGE + " serial numbers are in use");
+    }
+
+    /**
+     * Marks a serial number as used so that it is never handed out
+     *
+     * @param serialNumber holds the serial number to be reserved
+     * @return true if the serial number was free and is now reserved, false if
+     * it was already in use
+     * @throws IllegalArgumentException if the serial number is not 7 digits long
+     */
+    public boolean reserve(int serialNumber) {
+        if (!isValid(serialNumber)) {
+            throw new IllegalArgumentException("Not a valid serial number: " + serialNumber);
+        }
+        int offset = serialNumber - MIN_SERIAL_NUMBER;
+        if (used.get(offset)) {
+            return false;
+        }
+        used.set(offset);
+        allocated++;
+        return true;
+    }
+
+    /**
+     * Checks whether a serial number is in use
+     *
+     * @param serialNumber holds the serial number to be checked
+     * @return true if the serial number is in use
+     */
+    public boolean isUsed(int serialNumber) {
+        return isValid(serialNumber) && used.get(serialNumber - MIN_SERIAL_NUMBER);
+    }
+
+    /**
+     * Gets the amount of serial numbers still available
+     *
+     * @return the amount of serial numbers still available
+     */
+    public int remaining() {
+        return RANGE - allocated;
+    }
+
+    /**
+     * Checks whether a number is a 7 digit serial number
+     *
+     * @param serialNumber holds the number to be checked
+     * @return true if the number is within the serial number range
+     */
+    public static boolean isValid(int serialNumber) {
+        return serialNumber >= MIN_SERIAL_NUMBER && serialNumber <= MAX_SERIAL_NUMBER;
+    }
+
+    /*
+     * Gets the keys of the permutation, used when writing a snapshot
+     */
+    int[] getRoundKeys() {
+        return roundKeys.clone();
+    }
+
+    /*
+     * Gets the position reached in the permutation, used when writing a 
+     * snapshot
+     */
+    int getCounter() {
+        return counter;
+    }
+
+    /*
+     * Gets the bitmap of serial numbers in use, indexed from the smallest
+     * serial number, used when writing a snapshot
+     */
+    BitSet getUsed() {
+        return (BitSet) used.clone();
+    }
+
+    /*
+     * Balanced Feistel network over 24 bit values. Every round is reversible,
+     * so distinct inputs always give distinct outputs.
+     */
+    private int permute(int value) {
+        int left = value >>> HALF_BITS;
+        int right = value & HALF_MASK;
+        for (int i = 0; i < ROUNDS; i++) {
+            int mixed = (right * 0x9E3779B1 + roundKeys[i]);
+            mixed ^= mixed >>> 15;
+            mixed *= 0x85EBCA6B;
+            mixed ^= mixed >>> 13;
+            int next = left ^ (mixed & HALF_MASK);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+}
@@ -16,41 +16,112 @@
  */
 package androidsrus;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * An instance of class <code>Setup</code> holds info on all existing robots, 
- * as well as info on origin and destination of robot parts
+ * as well as info on origin and destination of robot parts.
+ * <p>
+ * Robots can be looked up in the registry and provenance store from any 
+ * number of threads while they are being created, imported or replayed. 
+ * Robots are created by one caller at a time: a single call to 
+ * {@link Scavenger#createNewRobots(Setup, int, java.util.concurrent.ForkJoinPool)}
+ * spreads its work over many threads, but the part pools are split for the
+ * duration of each call, so callers must never create robots concurrently.
  * 
  * @author Wellington Regis
  */
 public class Setup {
+    private static final Model[] MODELS = Model.ofLine(Line.OLD);
+    private static final String[] BRAINS = {"2.5", "3.5", "4.5"};
+    private static final String[] MOBILITIES = {"catapilar tracks", "wheels", "legs"};
+    private static final String[] VISIONS = {"heat vision", "full colour", "night vision"};
+    private static final String[] ARMS = {"claws", "grippers", "articulated fingers"};
+    private static final String[] MEDIA_CENTERS = {"sony", "jvc", "meridian"};
+    private static final String[] POWER_PLANTS = {"lithium", "hydrogen", "plasma"};
+    
     // Used to hold data
-    private final HashMap robotViaSerial;
-    private final HashMap partOrigin;
-    private final HashMap partDestination;
+    private final RobotRegistry robotViaSerial;
+    private final ProvenanceStore provenance;
+    private final SerialNumberAllocator serialNumbers;
+    private final AttributeIndex attributes;
+    private Journal journal;
     
     // Used to help create new robots from old androids
-    private final HashSet availableBrain;
-    private final HashSet availableMobility;
-    private final HashSet availableVision;
-    private final HashSet availableArms;
-    private final HashSet availableMediaCenter;
-    private final HashSet availablePowerPlant;
+    private final PartPool[] available; // one pool per part type
+    private final PartClaims claims;
+    private final RandomStreams random;
 
     /**
      * Constructor for the <code>Setup</code> class
      */
     public Setup() {
-        this.robotViaSerial = new HashMap<>();
-        this.partOrigin = new HashMap<>();
-        this.partDestination = new HashMap<>();
-        this.availableBrain = new HashSet<>();
-        this.availableMobility = new HashSet<>();
-        this.availableVision = new HashSet<>();
-        this.availableArms = new HashSet<>();
-        this.availableMediaCenter = new HashSet<>();
-        this.availablePowerPlant = new HashSet<>();
+        this(RunConfiguration.DEFAULT_DONORS, RunConfiguration.DEFAULT_BUILDS);
+    }
+
+    /**
+     * Constructor for the <code>Setup</code> class which sizes its data 
+     * structures up front, so that large runs don't have to keep rehashing
+     * 
+     * @param donors holds the amount of old androids expected
+     * @param builds holds the amount of new robots expected
+     */
+    public Setup(int donors, int builds) {
+        this(donors, builds, Utilities.getInstance().getR().nextLong());
+    }
+
+    /**
+     * Constructor for the <code>Setup</code> class which sizes its data 
+     * structures up front, so that large runs don't have to keep rehashing
+     * 
+     * @param donors holds the amount of old androids expected
+     * @param builds holds the amount of new robots expected
+     * @param seed holds the seed all random choices are derived from. Two 
+     * instances set up with the same seed and sizes hold the same robots.
+     */
+    public Setup(int donors, int builds, long seed) {
+        this(donors, builds, seed, Storage.HEAP);
+    }
+
+    /**
+     * Constructor for the <code>Setup</code> class which sizes its data 
+     * structures up front, so that large runs don't have to keep rehashing
+     * 
+     * @param donors holds the amount of old androids expected
+     * @param builds holds the amount of new robots expected
+     * @param seed holds the seed all random choices are derived from. Two 
+     * instances set up with the same seed and sizes hold the same robots.
+     * @param storage holds where robots and the origin of their parts are
+     * kept
+     */
+    public Setup(int donors, int builds, long seed, Storage storage) {
+        int robots = donors + builds;
+        this.robotViaSerial = new RobotRegistry(robots, storage);
+        this.provenance = new ProvenanceStore(robotViaSerial, robots, storage);
+        this.random = new RandomStreams(seed);
+        this.serialNumbers = new SerialNumberAllocator(random.getSerialNumbers());
+        this.attributes = new AttributeIndex(robotViaSerial, provenance);
+        this.available = new PartPool[PartType.COUNT];
+        for (int i = 0; i < PartType.COUNT; i++) {
+            this.available[i] = new PartPool(donors);
+        }
+        this.claims = new PartClaims(donors);
+    }
+
+    /*
+     * Constructor for class Setup taking data structures that already hold
+     * robots, e.g. when loading a snapshot
+     */
+    Setup(RobotRegistry robots, ProvenanceStore provenance, SerialNumberAllocator serialNumbers, PartPool[] available, RandomStreams random) {
+        this.robotViaSerial = robots;
+        this.provenance = provenance;
+        this.serialNumbers = serialNumbers;
+        this.attributes = new AttributeIndex(robots, provenance);
+        this.available = available;
+        this.claims = new PartClaims(robots.size());
+        this.random = random;
     }
 
     /**
@@ -58,137 +129,203 @@ public class Setup {
      * creating the new line of robots
      */
     public void setUp() {
-        String model;
-        int serialNumber;
-        String brain;
-        String mobility;
-        String vision;
-        String arms;
-        String mediaCenter;
-        String powerPlant;
+        setUp(RunConfiguration.DEFAULT_DONORS);
+    }
+
+    /**
+     * This method initialises a given amount of androids to be then used when 
+     * creating the new line of robots
+     * 
+     * @param amount holds the amount of old androids to be created
+     */
+    public void setUp(int amount) {
+        setUp(amount, null);
+    }
+
+    /**
+     * This method initialises a given amount of androids to be then used when 
+     * creating the new line of robots. Androids are generated in chunks, each
+     * with its own random number generator, and chunks are spread over the 
+     * threads of the given pool.
+     * 
+     * @param amount holds the amount of old androids to be created
+     * @param pool holds the thread pool used to generate androids, or null to
+     * generate them on the calling thread
+     */
+    public void setUp(int amount, ForkJoinPool pool) {
+        Utilities utilities = Utilities.getInstance();
+        int chunks = utilities.chunksFor(amount);
+        Robot[][] batches = new Robot[chunks][];
+        List<Callable<Void>> tasks = new ArrayList<>(chunks);
         
-        for(int i = 0; i < 500; i++) {
-            // Randomisation of parts and serial number (which is unique)
-            model = Utilities.getInstance().pickARandomString("mk1", "mk2", "mk3", "mk4", "mk5");
-            serialNumber = Utilities.getInstance().pickARandomSerialNumber(robotViaSerial);
-            brain = Utilities.getInstance().pickARandomString("2.5", "3.5", "4.5");
-            mobility = Utilities.getInstance().pickARandomString("catapilar tracks", "wheels", "legs");
-            vision = Utilities.getInstance().pickARandomString("heat vision", "full colour", "night vision");
-            arms = Utilities.getInstance().pickARandomString("claws", "grippers", "articulated fingers");
-            mediaCenter = Utilities.getInstance().pickARandomString("sony", "jvc", "meridian");
-            powerPlant = Utilities.getInstance().pickARandomString("lithium", "hydrogen", "plasma");
-            
-            // Creates robot and adds it to hash map holding pool of robots
-            Robot robot = new Robot(model, serialNumber, brain, mobility, vision, arms, mediaCenter, powerPlant);
-            this.robotViaSerial.put(serialNumber, robot);
+        for (int c = 0; c < chunks; c++) {
+            int from = (int) ((long) amount * c / chunks);
+            int to = (int) ((long) amount * (c + 1) / chunks);
             
-            // Adds the serial number of the newly created robot to hash sets 
-            // that will be used when creating new robots. If a serial number 
-            // is in the hash set, that means it is available. If a serial 
-            // number is chosen, it is then deleted from the set.
-            availableBrain.add(serialNumber);
-            availableMobility.add(serialNumber);
-            availableVision.add(serialNumber);
-            availableArms.add(serialNumber);
-            availableMediaCenter.add(serialNumber);
-            availablePowerPlant.add(serialNumber);
+            // Serial numbers (which are unique) and random number generators
+            // are handed out before any task runs, so that they do not depend
+            // on the order in which tasks are run
+            int[] serialNumbers = new int[to - from];
+            for (int i = 0; i < serialNumbers.length; i++) {
+                serialNumbers[i] = this.serialNumbers.next();
+            }
+            SplittableRandom chunkRandom = random.getDonors().split();
+            Robot[] batch = new Robot[to - from];
+            batches[c] = batch;
             
+            tasks.add(() -> {
+                for (int i = 0; i < batch.length; i++) {
+                    // Randomisation of parts
+                    Model model = utilities.pickARandomOption(chunkRandom, MODELS);
+                    String brain = utilities.pickARandomOption(chunkRandom, BRAINS);
+                    String mobility = utilities.pickARandomOption(chunkRandom, MOBILITIES);
+                    String vision = utilities.pickARandomOption(chunkRandom, VISIONS);
+                    String arms = utilities.pickARandomOption(chunkRandom, ARMS);
+                    String mediaCenter = utilities.pickARandomOption(chunkRandom, MEDIA_CENTERS);
+                    String powerPlant = utilities.pickARandomOption(chunkRandom, POWER_PLANTS);
+                    
+                    batch[i] = new Robot(model, serialNumbers[i], brain, mobility, vision, arms, mediaCenter, powerPlant);
+                }
+                return null;
+            });
+        }
+        utilities.runTasks(tasks, pool);
+        
+        for (Robot[] batch : batches) {
+            // Adds robots to registry holding pool of robots
+            int first = this.robotViaSerial.addAll(batch);
+            makeAvailable(first, batch.length);
+        }
+    }
+
+    /**
+     * Adds old androids that were created elsewhere, e.g. imported from a 
+     * file, making all their parts available to new robots. Their serial
+     * numbers must already be reserved.
+     * 
+     * @param serialNumbers holds the serial numbers of the androids
+     * @param codes holds the parts and models of the androids as packed by
+     * {@link Robot#getCodes()}
+     * @param count holds the amount of androids, taken from the start of 
+     * both arrays
+     * @throws IllegalArgumentException if a serial number is already in use
+     */
+    public void addDonors(int[] serialNumbers, long[] codes, int count) {
+        int first = robotViaSerial.size();
+        for (int i = 0; i < count; i++) {
+            robotViaSerial.add(serialNumbers[i], codes[i]);
+        }
+        makeAvailable(first, count);
+    }
+
+    /*
+     * Adds the registry slots of newly added androids to part pools that will
+     * be used when creating new robots. If a slot is in the pool, that means 
+     * it is available. If a slot is chosen, it is then removed from the pool.
+     * The androids are then logged, once they are in place.
+     */
+    private void makeAvailable(int first, int count) {
+        claims.ensureCapacity(first + count);
+        for (PartPool partPool : available) {
+            for (int slot = first; slot < first + count; slot++) {
+                partPool.add(slot);
+            }
+        }
+        
+        if (journal != null) {
+            try {
+                journal.appendDonors(this, first, count);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not log old androids", ex);
+            }
         }
     }
     
     /**
-     * Gets hash map containing serial numbers as keys and <code>Robot</code>
-     * objects as values for all objects. It is used to quickly access a 
-     * <code>Robot</code> instance through its serial number
+     * Gets registry holding all <code>Robot</code> objects. It is used to 
+     * quickly access a <code>Robot</code> instance through its serial number
      * 
-     * @return hash map containing serial numbers as keys and <code>Robot</code>
-     * objects as values for all objects
+     * @return registry holding all <code>Robot</code> objects
      */
-    public HashMap<Integer,Robot> getRobotViaSerial() {
+    public RobotRegistry getRobotViaSerial() {
         return robotViaSerial;
     }
     
-     /**
-      * Gets hash map used to find out the origins of the parts of a robot from 
-      * the new line. It contains serial numbers of new robots as keys and 
-      * other hash maps as values (which have strings with robot part names as 
-      * keys and serial numbers as values). 
-      * 
-      * @return hash map containing serial numbers of new robots as keys and 
-      * other hash maps as values (which has strings with robot part names as 
-      * keys and serial numbers as values)
-      */
-    public HashMap<Integer, HashMap> getPartOrigin() {
-        return partOrigin;
-    }
-
-    /**
-     * Gets hash map used to find out the destination of the parts of a robot 
-     * from the old line. It contains serial numbers of old robots as keys and 
-     * other hash maps as values (which have strings with robot part names as 
-     * keys and serial numbers as values). If the second hash map does not 
-     * contain an entry with a robot part name as key, this means that the 
-     * robot part was not yet used.
-     *
-     * @return hash map containing serial numbers of old robots as keys and 
-     * other hash maps as values (which have strings with robot part names as 
-     * keys and serial numbers as values)
-     */
-    public HashMap<Integer, HashMap> getPartDestination() {
-        return partDestination;
-    }
-
-    /**
-     * Gets hash set with the serial numbers of available brain parts
+    /**
+     * Gets the allocator handing out unique serial numbers to new robots
+     * 
+     * @return the allocator handing out unique serial numbers
+     */
+    public SerialNumberAllocator getSerialNumberAllocator() {
+        return serialNumbers;
+    }
+    
+    /**
+     * Gets the random number streams from which the generators used when 
+     * creating robots are split
+     * 
+     * @return the random number streams robots are created from
+     */
+    public RandomStreams getRandom() {
+        return random;
+    }
+    
+    /**
+     * Gets the store used to find out the origins of the parts of a robot 
+     * from the new line, as well as the destination of the parts of a robot 
+     * from the old line. If an old robot has no destination for a part, this 
+     * means that the robot part was not yet used.
      * 
-     * @return hash set with the serial numbers of available brain parts
+     * @return the store holding the origin and destination of robot parts
      */
-    public HashSet getAvailableBrain() {
-        return availableBrain;
+    public ProvenanceStore getProvenance() {
+        return provenance;
     }
 
     /**
-     * Gets hash set with the serial numbers of available mobility parts
+     * Gets the journal robots are logged to as they are added
      * 
-     * @return hash set with the serial numbers of available mobility parts
+     * @return the journal or null if robots are not logged
      */
-    public HashSet getAvailableMobility() {
-        return availableMobility;
+    public Journal getJournal() {
+        return journal;
     }
 
     /**
-     * Gets hash set with the serial numbers of available vision parts
+     * Sets the journal robots are logged to as they are added
      * 
-     * @return hash set with the serial numbers of available vision parts
+     * @param journal holds the journal or null to stop logging robots
      */
-    public HashSet getAvailableVision() {
-        return availableVision;
+    public void setJournal(Journal journal) {
+        this.journal = journal;
     }
 
     /**
-     * Gets hash set with the serial numbers of available arms parts
+     * Gets the index used to search robots by their attributes
      * 
-     * @return hash set with the serial numbers of available arms parts
+     * @return the index used to search robots by their attributes
      */
-    public HashSet getAvailableArms() {
-        return availableArms;
+    public AttributeIndex getAttributeIndex() {
+        return attributes;
     }
 
     /**
-     * Gets hash set with the serial numbers of available media center parts
+     * Gets pool with the slots of robots with available parts of a given type
      * 
-     * @return hash set with the serial numbers of available media center parts
+     * @param part holds the type of part
+     * @return pool with the slots of robots with available parts of that type
      */
-    public HashSet getAvailableMediaCenter() {
-        return availableMediaCenter;
+    public PartPool getAvailable(PartType part) {
+        return available[part.ordinal()];
     }
-    
+
     /**
-     * Gets hash set with the serial numbers of available power plant parts
+     * Gets the claims made on the parts of old androids by the threads 
+     * building new robots
      * 
-     * @return hash set with the serial numbers of available power plant parts
+     * @return the claims made on the parts of old androids
      */
-    public HashSet getAvailablePowerPlant() {
-        return availablePowerPlant;
+    public PartClaims getClaims() {
+        return claims;
     }
 }
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Class <code>Snapshot</code> saves everything held by a <code>Setup</code> to
+ * a binary file and loads it back, so that a yard can be kept between runs
+ * instead of being generated again.
+ * <p>
+ * The file starts with a header (format version, seed, sizes, the state of
+ * the serial number allocator and the part dictionaries) followed by one 
+ * section per column: packed parts and models, serial numbers, the serial 
+ * number hash table, origins and destinations of parts, the available part 
+ * pools, the slots of each model and the bitmap of serial numbers in use. All numbers are little endian and every section 
+ * starts at a multiple of 8 bytes. Sections are memory-mapped when loading.
+ * With <code>Storage.OFF_HEAP</code> the mapped sections are used as they 
+ * are, so loading takes about as long as mapping the file, while 
+ * <code>Storage.HEAP</code> copies each section into an array in one go.
+ *
+ * @author Wellington Regis
+ */
+public final class Snapshot {
+    private static final int MAGIC = 0x53555241; // "ARUS" in little endian
+    private static final int VERSION = 1;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /*
+     * Constructor for class Snapshot, which only has static methods
+     */
+    private Snapshot() {
+    }
+
+    /**
+     * Writes a snapshot of a setup to a file. The snapshot is written to a 
+     * temporary file next to it first, which then replaces the file, so an
+     * existing snapshot is never left half written.
+     *
+     * @param s holds the setup to be saved
+     * @param file holds the path of the snapshot
+     * @throws IOException if the snapshot could not be written
+     */
+    public static void write(Setup s, Path file) throws IOException {
+        RobotRegistry robots = s.getRobotViaSerial();
+        ProvenanceStore provenance = s.getProvenance();
+        SerialNumberAllocator serialNumbers = s.getSerialNumberAllocator();
+        int size = robots.size();
+        IntColumn keys = robots.getKeys();
+        IntColumn slots = robots.getSlots();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ORDER);
+
+            // Header
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(s.getRandom().getSeed());
+            buffer.putInt(size).putInt(keys.length());
+            int[] roundKeys = serialNumbers.getRoundKeys();
+            buffer.putInt(roundKeys.length);
+            for (int key : roundKeys) {
+                buffer.putInt(key);
+            }
+            buffer.putInt(serialNumbers.getCounter());
+            for (PartType part : PartType.values()) {
+                int count = PartDictionary.size(part);
+                buffer.putInt(count);
+                for (int code = 0; code < count; code++) {
+                    byte[] value = PartDictionary.decode(part, code).getBytes(StandardCharsets.UTF_8);
+                    buffer.putInt(value.length).put(value);
+                }
+            }
+            align(channel, buffer);
+
+            // Columns
+            for (int slot = 0; slot < size; slot++) {
+                flushIfFull(channel, buffer, Long.BYTES).putLong(robots.getCodesAt(slot));
+            }
+            for (int slot = 0; slot < size; slot++) {
+                flushIfFull(channel, buffer, Integer.BYTES).putInt(robots.getSerialNumberAt(slot));
+            }
+            align(channel, buffer);
+            for (int i = 0; i < keys.length(); i++) {
+                flushIfFull(channel, buffer, Integer.BYTES).putInt(keys.get(i));
+            }
+            for (int i = 0; i < slots.length(); i++) {
+                flushIfFull(channel, buffer, Integer.BYTES).putInt(slots.get(i));
+            }
+            for (int slot = 0; slot < size; slot++) {
+                for (PartType part : PartType.values()) {
+                    flushIfFull(channel, buffer, Integer.BYTES).putInt(provenance.getOriginAt(slot, part));
+                }
+            }
+            for (int slot = 0; slot < size; slot++) {
+                for (PartType part : PartType.values()) {
+                    flushIfFull(channel, buffer, Integer.BYTES).putInt(provenance.getDestinationAt(slot, part));
+                }
+            }
+            for (PartType part : PartType.values()) {
+                PartPool pool = s.getAvailable(part);
+                flushIfFull(channel, buffer, Integer.BYTES).putInt(pool.size());
+                align(channel, buffer);
+                for (int i = 0; i < pool.size(); i++) {
+                    flushIfFull(channel, buffer, Integer.BYTES).putInt(pool.get(i));
+                }
+                align(channel, buffer);
+            }
+            ModelIndex models = robots.getModelIndex();
+            for (Model model : Model.values()) {
+                flushIfFull(channel, buffer, Integer.BYTES).putInt(models.count(model));
+                align(channel, buffer);
+                for (int i = 0; i < models.count(model); i++) {
+                    flushIfFull(channel, buffer, Integer.BYTES).putInt(models.slotAt(model, i));
+                }
+                align(channel, buffer);
+            }
+            long[] used = serialNumbers.getUsed().toLongArray();
+            flushIfFull(channel, buffer, Integer.BYTES).putInt(used.length);
+            align(channel, buffer);
+            for (long word : used) {
+                flushIfFull(channel, buffer, Long.BYTES).putLong(word);
+            }
+            flush(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a setup from a snapshot file
+     *
+     * @param file holds the path of the snapshot
+     * @param storage holds where robots and the origin of their parts are to
+     * be kept
+     * @return a setup holding the robots, origins, destinations and available
+     * parts found in the snapshot. Its random streams start over from the
+     * seed of the snapshot.
+     * @throws IOException if the file could not be read or is not a snapshot
+     */
+    public static Setup read(Path file, Storage storage) throws IOException {
+        // Mapped privately so that the columns can still be written, e.g. when
+        // more robots are built, without changing the file. Java only maps
+        // privately through channels open for writing.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long length = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.PRIVATE, 0, Math.min(length, BUFFER_SIZE)).order(ORDER);
+            try {
+                if (header.getInt() != MAGIC) {
+                    throw new IOException("Not a snapshot file: " + file);
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported snapshot version " + version + " in " + file);
+                }
+                long seed = header.getLong();
+                int size = header.getInt();
+                int tableCapacity = header.getInt();
+                int[] roundKeys = new int[header.getInt()];
+                for (int i = 0; i < roundKeys.length; i++) {
+                    roundKeys[i] = header.getInt();
+                }
+                int counter = header.getInt();
+
+                // Codes in the file are mapped to the codes of this run, which
+                // differ if other robots were created before loading
+                int[][] recode = new int[PartType.COUNT][];
+                boolean sameCodes = true;
+                for (PartType part : PartType.values()) {
+                    int count = header.getInt();
+                    recode[part.ordinal()] = new int[count];
+                    for (int code = 0; code < count; code++) {
+                        byte[] value = new byte[header.getInt()];
+                        header.get(value);
+                        int current = PartDictionary.encode(part, new String(value, StandardCharsets.UTF_8));
+                        recode[part.ordinal()][code] = current;
+                        sameCodes &= current == code;
+                    }
+                }
+                long position = aligned(header.position());
+
+                // Columns
+                LongColumn codes = storage.longColumnOf(map(channel, position, size, Long.BYTES).asLongBuffer());
+                position += (long) size * Long.BYTES;
+                IntColumn serialNumbers = storage.intColumnOf(map(channel, position, size, Integer.BYTES).asIntBuffer());
+                position = aligned(position + (long) size * Integer.BYTES);
+                IntColumn keys = storage.intColumnOf(map(channel, position, tableCapacity, Integer.BYTES).asIntBuffer());
+                position += (long) tableCapacity * Integer.BYTES;
+                IntColumn slots = storage.intColumnOf(map(channel, position, tableCapacity, Integer.BYTES).asIntBuffer());
+                position += (long) tableCapacity * Integer.BYTES;
+                int cells = size * PartType.COUNT;
+                IntColumn origin = storage.intColumnOf(map(channel, position, cells, Integer.BYTES).asIntBuffer());
+                position += (long) cells * Integer.BYTES;
+                IntColumn destination = storage.intColumnOf(map(channel, position, cells, Integer.BYTES).asIntBuffer());
+                position = aligned(position + (long) cells * Integer.BYTES);
+
+                if (!sameCodes) {
+                    for (int slot = 0; slot < size; slot++) {
+                        long packed = codes.get(slot);
+                        for (PartType part : PartType.values()) {
+                            packed = Robot.withPartCode(packed, part, recode[part.ordinal()][Robot.partCodeOf(packed, part)]);
+                        }
+                        codes.set(slot, packed);
+                    }
+                }
+
+                PartPool[] available = new PartPool[PartType.COUNT];
+                for (PartType part : PartType.values()) {
+                    int poolSize = map(channel, position, 1, Integer.BYTES).getInt();
+                    position += Long.BYTES;
+                    int[] entries = new int[poolSize];
+                    map(channel, position, poolSize, Integer.BYTES).asIntBuffer().get(entries);
+                    position = aligned(position + (long) poolSize * Integer.BYTES);
+                    int largest = -1;
+                    for (int entry : entries) {
+                        largest = Math.max(largest, entry);
+                    }
+                    available[part.ordinal()] = new PartPool(entries, largest + 1);
+                }
+
+                int[][] modelSlots = new int[Model.COUNT][];
+                int[] modelCounts = new int[Model.COUNT];
+                for (Model model : Model.values()) {
+                    int count = map(channel, position, 1, Integer.BYTES).getInt();
+                    position += Long.BYTES;
+                    modelSlots[model.ordinal()] = new int[count];
+                    map(channel, position, count, Integer.BYTES).asIntBuffer().get(modelSlots[model.ordinal()]);
+                    modelCounts[model.ordinal()] = count;
+                    position = aligned(position + (long) count * Integer.BYTES);
+                }
+
+                int words = map(channel, position, 1, Integer.BYTES).getInt();
+                position += Long.BYTES;
+                BitSet used = BitSet.valueOf(map(channel, position, words, Long.BYTES).asLongBuffer());
+                position += (long) words * Long.BYTES;
+                if (position != length) {
+                    throw new IOException("Snapshot " + file + " holds " + (length - position) + " unexpected bytes");
+                }
+
+                RobotRegistry robots = new RobotRegistry(storage, keys, slots, serialNumbers, codes, size, 
+                        new ModelIndex(modelSlots, modelCounts));
+                ProvenanceStore provenance = new ProvenanceStore(robots, origin, destination);
+                SerialNumberAllocator allocator = new SerialNumberAllocator(roundKeys, counter, used);
+                return new Setup(robots, provenance, allocator, available, new RandomStreams(seed));
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+                throw new IOException("Snapshot " + file + " is truncated or damaged", ex);
+            }
+        }
+    }
+
+    /*
+     * Maps a section of the file holding a given amount of cells
+     */
+    private static ByteBuffer map(FileChannel channel, long position, int cells, int bytesPerCell) throws IOException {
+        long bytes = (long) cells * bytesPerCell;
+        if (cells < 0 || position + bytes > channel.size()) {
+            throw new IOException("Snapshot is truncated or damaged");
+        }
+        return channel.map(FileChannel.MapMode.PRIVATE, position, bytes).order(ORDER);
+    }
+
+    /*
+     * Makes room in the buffer for a value of the given size, writing the
+     * buffer out if it is full
+     */
+    private static ByteBuffer flushIfFull(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+        return buffer;
+    }
+
+    /*
+     * Writes out everything in the buffer and empties it
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /*
+     * Pads the file with zeros up to the next multiple of 8 bytes, counting
+     * what has been written out already as well as what is in the buffer
+     */
+    private static void align(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long offset = channel.position() + buffer.position();
+        for (long i = offset; i < aligned(offset); i++) {
+            flushIfFull(channel, buffer, 1).put((byte) 0);
+        }
+    }
+
+    /*
+     * Rounds a file position up to the next multiple of 8 bytes
+     */
+    private static long aligned(long position) {
+        return (position + Long.BYTES - 1) & -Long.BYTES;
+    }
+}
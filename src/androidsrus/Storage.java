@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+ * The places where the columns holding robots and the origin of their parts
+ * can be stored.
+ * <p>
+ * <code>HEAP</code> keeps columns in plain Java arrays. <code>OFF_HEAP</code>
+ * keeps them in direct buffers outside of the Java heap, which the garbage
+ * collector never has to scan or move, so yards of many millions of robots 
+ * do not lengthen collections. Off heap memory is limited by 
+ * <code>-XX:MaxDirectMemorySize</code> (by default the maximum heap size) and
+ * a single column holds at most 2 GB.
+ *
+ * @author Wellington Regis
+ */
+public enum Storage {
+    HEAP("heap") {
+        @Override
+        public IntColumn newIntColumn(int length) {
+            return new HeapIntColumn(new int[length]);
+        }
+
+        @Override
+        public LongColumn newLongColumn(int length) {
+            return new HeapLongColumn(new long[length]);
+        }
+
+        @Override
+        public IntColumn intColumnOf(IntBuffer cells) {
+            int[] array = new int[cells.remaining()];
+            cells.duplicate().get(array);
+            return new HeapIntColumn(array);
+        }
+
+        @Override
+        public LongColumn longColumnOf(LongBuffer cells) {
+            long[] array = new long[cells.remaining()];
+            cells.duplicate().get(array);
+            return new HeapLongColumn(array);
+        }
+    },
+    OFF_HEAP("offheap") {
+        @Override
+        public IntColumn newIntColumn(int length) {
+            return new DirectIntColumn(allocate(length, Integer.BYTES).asIntBuffer());
+        }
+
+        @Override
+        public LongColumn newLongColumn(int length) {
+            return new DirectLongColumn(allocate(length, Long.BYTES).asLongBuffer());
+        }
+
+        @Override
+        public IntColumn intColumnOf(IntBuffer cells) {
+            return new DirectIntColumn(cells.slice());
+        }
+
+        @Override
+        public LongColumn longColumnOf(LongBuffer cells) {
+            return new DirectLongColumn(cells.slice());
+        }
+    };
+
+    private final String name;
+
+    /*
+     * Constructor for enum Storage
+     */
+    private Storage(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of the storage as used in settings (e.g. "offheap")
+     *
+     * @return the name of the storage
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a column of ints filled with 0
+     *
+     * @param length holds the amount of cells
+     * @return the new column
+     */
+    public abstract IntColumn newIntColumn(int length);
+
+    /**
+     * Creates a column of longs filled with 0
+     *
+     * @param length holds the amount of cells
+     * @return the new column
+     */
+    public abstract LongColumn newLongColumn(int length);
+
+    /**
+     * Creates a column holding the ints of a buffer, such as a section of a
+     * memory-mapped snapshot. <code>HEAP</code> copies them into an array 
+     * while <code>OFF_HEAP</code> uses the buffer itself.
+     *
+     * @param cells holds the ints from its position to its limit
+     * @return the new column
+     */
+    public abstract IntColumn intColumnOf(IntBuffer cells);
+
+    /**
+     * Creates a column holding the longs of a buffer, such as a section of a
+     * memory-mapped snapshot. <code>HEAP</code> copies them into an array 
+     * while <code>OFF_HEAP</code> uses the buffer itself.
+     *
+     * @param cells holds the longs from its position to its limit
+     * @return the new column
+     */
+    public abstract LongColumn longColumnOf(LongBuffer cells);
+
+    /**
+     * Finds the storage with a particular name
+     *
+     * @param name holds the name of the storage, e.g. "heap"
+     * @return the storage with that name
+     * @throws IllegalArgumentException if there is no storage with that name
+     */
+    public static Storage fromName(String name) {
+        for (Storage storage : values()) {
+            if (storage.name.equals(name)) {
+                return storage;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage: " + name);
+    }
+
+    /*
+     * Allocates a direct buffer in the byte order of the machine, so that
+     * reads and writes need no byte swapping
+     */
+    private static ByteBuffer allocate(int length, int bytesPerCell) {
+        long bytes = (long) length * bytesPerCell;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Column of " + length + " cells does not fit into a direct buffer");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /*
+     * Column of ints kept in an array
+     */
+    private static final class HeapIntColumn implements IntColumn {
+        private final int[] cells;
+
+        private HeapIntColumn(int[] cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public int get(int index) {
+            return cells[index];
+        }
+
+        @Override
+        public void set(int index, int value) {
+            cells[index] = value;
+        }
+
+        @Override
+        public int length() {
+            return cells.length;
+        }
+
+        @Override
+        public IntColumn copyOf(int length) {
+            return new HeapIntColumn(Arrays.copyOf(cells, length));
+        }
+    }
+
+    /*
+     * Column of longs kept in an array
+     */
+    private static final class HeapLongColumn implements LongColumn {
+        private final long[] cells;
+
+        private HeapLongColumn(long[] cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public long get(int index) {
+            return cells[index];
+        }
+
+        @Override
+        public void set(int index, long value) {
+            cells[index] = value;
+        }
+
+        @Override
+        public int length() {
+            return cells.length;
+        }
+
+        @Override
+        public LongColumn copyOf(int length) {
+            return new HeapLongColumn(Arrays.copyOf(cells, length));
+        }
+    }
+
+    /*
+     * Column of ints kept in a direct buffer. Only absolute gets and puts are
+     * used, so different cells can be written by different threads. Copies 
+     * work on a duplicate whose position is reset first, since the position
+     * of a buffer filled by a bulk put is left at its end.
+     */
+    private static final class DirectIntColumn implements IntColumn {
+        private final IntBuffer cells;
+
+        private DirectIntColumn(IntBuffer cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public int get(int index) {
+            return cells.get(index);
+        }
+
+        @Override
+        public void set(int index, int value) {
+            cells.put(index, value);
+        }
+
+        @Override
+        public int length() {
+            return cells.capacity();
+        }
+
+        @Override
+        public IntColumn copyOf(int length) {
+            IntBuffer copy = allocate(length, Integer.BYTES).asIntBuffer();
+            IntBuffer source = cells.duplicate();
+            source.clear().limit(Math.min(length, source.capacity()));
+            copy.put(source);
+            return new DirectIntColumn(copy);
+        }
+    }
+
+    /*
+     * Column of longs kept in a direct buffer, used the same way as 
+     * DirectIntColumn
+     */
+    private static final class DirectLongColumn implements LongColumn {
+        private final LongBuffer cells;
+
+        private DirectLongColumn(LongBuffer cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public long get(int index) {
+            return cells.get(index);
+        }
+
+        @Override
+        public void set(int index, long value) {
+            cells.put(index, value);
+        }
+
+        @Override
+        public int length() {
+            return cells.capacity();
+        }
+
+        @Override
+        public LongColumn copyOf(int length) {
+            LongBuffer copy = allocate(length, Long.BYTES).asLongBuffer();
+            LongBuffer source = cells.duplicate();
+            source.clear().limit(Math.min(length, source.capacity()));
+            copy.put(source);
+            return new DirectLongColumn(copy);
+        }
+    }
+}
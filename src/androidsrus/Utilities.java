@@ -16,7 +16,9 @@
  */
 package androidsrus;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class contains methods that are useful throughout the AndroidsRus 
@@ -25,16 +27,25 @@ import java.util.*;
  * @author Wellington Regis
  */
 public class Utilities {
+    /**
+     * Amount of robots generated by one task when generating robots in 
+     * chunks. The work done by a chunk does not depend on how many threads 
+     * there are, so a run gives the same robots with and without threads.
+     */
+    public static final int CHUNK_SIZE = 16384;
+    
     private static Utilities INSTANCE = null;
     private static Random r;
-    private static Scanner scan;
+    private static InputReader input;
+    private static PrintStream boundOut; // standard output the printer writes to
+    private static RobotPrinter printer; // reused by every robot printed
 
     /*
      * Constructor for class Utilities
      */
     private Utilities() {
         r = new Random();
-        scan = new Scanner(System.in);
+        input = new InputReader(System.in);
     }
 
     /**
@@ -118,18 +129,83 @@ public class Utilities {
     }
     
     /**
-     * This method returns a random and unique serial number with 7 digits
+     * Picks a random option among available options
      * 
-     * @param map holds a hash map containing serial numbers of existing robots
-     * as keys and <code>Robot</code> objects as values.
-     * @return a random and unique serial number
-     */
-    public int pickARandomSerialNumber(HashMap map) {
-        int randomNum = (r.nextInt(10000000));
-        if(map.containsKey(randomNum) || randomNum < 999999) {
-            Utilities.getInstance().pickARandomSerialNumber(map);
+     * @param <T> holds the type of the options
+     * @param random holds the random number generator to be used
+     * @param options holds the available options
+     * @return one of the available options
+     */
+    public <T> T pickARandomOption(SplittableRandom random, T[] options) {
+        return options[random.nextInt(options.length)];
+    }
+    
+    /**
+     * Works out how many chunks of <code>CHUNK_SIZE</code> robots are needed
+     * to generate a given amount of robots
+     * 
+     * @param amount holds the amount of robots
+     * @return the amount of chunks, which is at least one
+     */
+    public int chunksFor(int amount) {
+        return Math.max(1, (int) (((long) amount + CHUNK_SIZE - 1) / CHUNK_SIZE));
+    }
+    
+    /**
+     * Runs tasks and waits for all of them to finish. If no thread pool is 
+     * given, tasks are run one after another on the calling thread. Failures
+     * are reported the same way whether or not a pool is used.
+     * 
+     * @param tasks holds the tasks to be run
+     * @param pool holds the thread pool used to run tasks, or null
+     * @throws RuntimeException thrown by any of the tasks, an <code>
+     * UncheckedIOException</code> if a task threw an <code>IOException</code>
+     * or an <code>IllegalStateException</code> if it threw any other checked
+     * exception, keeping its message
+     */
+    public void runTasks(List<Callable<Void>> tasks, ForkJoinPool pool) {
+        try {
+            if (pool == null) {
+                for (Callable<Void> task : tasks) {
+                    task.call();
+                }
+            } else {
+                for (Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            }
+        } catch (ExecutionException ex) {
+            // A fork join pool may rethrow a copy of what the task threw on
+            // another thread, with the original as its cause, in which case 
+            // the original is reported so that messages are the same
+            Throwable cause = ex.getCause();
+            if (cause.getCause() != null && cause.getCause().getClass() == cause.getClass()) {
+                cause = cause.getCause();
+            }
+            throw unchecked(cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running tasks", ex);
+        } catch (Exception ex) {
+            throw unchecked(ex);
         }
-        return randomNum;
+    }
+    
+    /*
+     * Turns whatever a task threw into an unchecked exception to be thrown 
+     * by the caller, rethrowing errors as they are
+     */
+    private static RuntimeException unchecked(Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof IOException) {
+            return new UncheckedIOException(cause.getMessage(), (IOException) cause);
+        }
+        return new IllegalStateException(cause.getMessage(), cause);
     }
     
     /**
@@ -143,20 +219,19 @@ public class Utilities {
         int option;
         while (true) {
             try {
-                option = scan.nextInt();
+                option = input.nextInt();
                 if (option > 0 && option <= size) {
                     break;
                 } else {
                     System.out.print("INVALID OPTION! Please type in a valid option: ");
                 }
             } catch (NumberFormatException ex) {
+                // The word has already been read past, so the next attempt
+                // reads the following one
                 System.out.print("INVALID OPTION! Please type in a valid option: ");
-            } catch (InputMismatchException ex) {
-                System.out.print("INVALID OPTION! Please type in a valid option: ");
-                scan.next();
             }
         }
-        scan.nextLine();
+        input.skipLine();
         return option;
     }
     
@@ -181,34 +256,44 @@ public class Utilities {
      * of robots
      * 
      * @param robot holds instance of class <code>Robot</code> 
-     * @param origin holds hash map containing part name Strings as keys and 
-     * serial number as values. It is used to obtain the origin of a part of 
-     * parameter 'robot'
-     * @param robots holds a hash with serial numbers as keys and <code>Robot
-     * </code> objects as values. It is used to obtain a robot from its serial 
-     * number
-     */
-    public void robotDetailsPrinter(Robot robot, HashMap<String, Integer> origin, HashMap<Integer,Robot> robots) {
-        System.out.println("\nModel: " + robot.getModel() + "\nSerial Number: "
-                + robot.getSerialNumber() + "\nBrain: " + robot.getBrain() 
-                + " GHz (" + robots.get(origin.get("brain")).getModel()
-                + ": serialNumber: " + origin.get("brain") + ")\nMobility: " 
-                + robot.getMobility() + " (" 
-                + robots.get(origin.get("mobility")).getModel() 
-                + ": serialNumber: " + origin.get("mobility") + ")\nVision: "
-                + robot.getVision() + " (" 
-                + robots.get(origin.get("vision")).getModel() 
-                + ": serialNumber: " + origin.get("vision") + ")\nArms: " 
-                + robot.getArms() + " (" 
-                + robots.get(origin.get("arms")).getModel() 
-                + ": serialNumber: " + origin.get("arms")+ ")\nMedia Center: " 
-                + robot.getMediaCenter() + " (" 
-                + robots.get(origin.get("mediaCenter")).getModel() 
-                + ": serialNumber: " + origin.get("mediaCenter")
-                + ")\nPower Plant: " + robot.getPowerPlant() + " (" 
-                + robots.get(origin.get("powerPlant")).getModel() 
-                + ": serialNumber: " + origin.get("powerPlant") + ")"
-        );
+     * @param provenance holds the store with the origin of robot parts. It is
+     * used to obtain the origin of a part of parameter 'robot'
+     * @param robots holds the registry of all robots. It is used to obtain a 
+     * robot from its serial number
+     */
+    public void robotDetailsPrinter(Robot robot, ProvenanceStore provenance, RobotRegistry robots) {
+        // Goes through a printer so that the origins of parts are looked up 
+        // by serial number without creating their robots
+        RobotPrinter printer = printerFor(robots, provenance);
+        try {
+            printer.printDetailsWithOrigins(robots.slotOf(robot.getSerialNumber()));
+            printer.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /*
+     * Gets the printer writing to the current standard output, making a new 
+     * one only when the standard output has been replaced or robots come 
+     * from another yard
+     */
+    private static RobotPrinter printerFor(RobotRegistry robots, ProvenanceStore provenance) {
+        if (printer == null || boundOut != System.out || !printer.prints(robots, provenance)) {
+            boundOut = System.out;
+            printer = new RobotPrinter(robots, provenance, ByteSink.of(boundOut));
+        }
+        return printer;
+    }
+
+    /**
+     * Seeds the object r of class <code>Random</code>, so that the random 
+     * choices made through this class can be repeated
+     * 
+     * @param seed holds the seed
+     */
+    public void setSeed(long seed) {
+        r.setSeed(seed);
     }
 
     /**
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2019 Wellington Regis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package androidsrus;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for class <code>Scavenger</code>
+ *
+ * @author Wellington Regis
+ */
+public class ScavengerTest {
+    private static final int TIMEOUT_SECONDS = 10;
+
+    private PartClaims claims;
+    private PartPool.Segment[][] segments;
+    private ExecutorService threads;
+
+    /**
+     * Gives every part type a pool with the parts of two old androids, split
+     * into one segment for each of two chunks, so that each chunk has a
+     * single part of every type
+     */
+    @Before
+    public void setUp() {
+        claims = new PartClaims(2);
+        segments = new PartPool.Segment[PartType.COUNT][];
+        for (PartType part : PartType.values()) {
+            PartPool pool = new PartPool();
+            pool.add(0);
+            pool.add(1);
+            segments[part.ordinal()] = pool.split(2);
+        }
+        threads = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    /**
+     * Chunk 0 runs out of brains while chunk 1 runs out of arms, each one
+     * holding the part the other one needs. Both must get that part instead
+     * of waiting for each other.
+     */
+    @Test
+    public void chunksRunningOutOfDifferentPartsGetEachOthersParts() throws Exception {
+        CyclicBarrier ranOut = new CyclicBarrier(2);
+        Future<Integer> first = threads.submit(() -> {
+            own(0);
+            assertEquals(0, pick(0, PartType.BRAIN));
+            ranOut.await();
+            return pick(0, PartType.BRAIN);
+        });
+        Future<Integer> second = threads.submit(() -> {
+            own(1);
+            assertEquals(1, pick(1, PartType.ARMS));
+            ranOut.await();
+            return pick(1, PartType.ARMS);
+        });
+
+        assertEquals(1, (int) first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, (int) second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Chunk 0 runs out of brains while chunk 1 runs out of arms, and no other
+     * chunk has any of them left. Both must fail instead of waiting for each
+     * other.
+     */
+    @Test
+    public void chunksRunningOutOfDifferentPartsFailWhenNoneAreLeft() throws Exception {
+        CyclicBarrier ranOut = new CyclicBarrier(2);
+        Future<Integer> first = threads.submit(() -> {
+            own(0);
+            pick(0, PartType.BRAIN);
+            pick(0, PartType.ARMS);
+            ranOut.await();
+            return pick(0, PartType.BRAIN);
+        });
+        Future<Integer> second = threads.submit(() -> {
+            own(1);
+            pick(1, PartType.BRAIN);
+            pick(1, PartType.ARMS);
+            ranOut.await();
+            return pick(1, PartType.ARMS);
+        });
+
+        assertRanOut(first);
+        assertRanOut(second);
+    }
+
+    /*
+     * Makes a chunk start using its segments, as its task does
+     */
+    private void own(int chunk) {
+        for (PartPool.Segment[] pool : segments) {
+            pool[chunk].own();
+        }
+    }
+
+    /*
+     * Picks a part for a chunk, with no other parts chosen for the robot yet
+     */
+    private int pick(int chunk, PartType part) {
+        return Scavenger.getRandomAvailablePart(segments, chunk, claims, part, new int[PartType.COUNT], 0, new int[PartType.COUNT], new SplittableRandom(chunk));
+    }
+
+    /*
+     * Checks that a chunk failed because there was no part left for it
+     */
+    private static void assertRanOut(Future<Integer> chunk) throws Exception {
+        try {
+            chunk.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("A part was picked although none was left");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+            assertTrue(ex.getCause().getMessage().startsWith("No old android has a"));
+        }
+    }
+}